@@ -0,0 +1,90 @@
+package org.quetoo.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the {@link Manager} prune walk over synthetic installation trees, half of whose
+ * files are unknown. Pruning is disabled, so the tree is only walked and reported, and is
+ * unchanged between invocations.
+ *
+ * @author jdolan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PruneBenchmark {
+
+	/**
+	 * The number of files in each directory of the tree.
+	 */
+	private static final int FILES_PER_DIR = 100;
+
+	@Param({ "10000", "100000" })
+	private int files;
+
+	private File dir;
+	private Manager manager;
+	private Set<Path> paths;
+
+	@Setup
+	public void setup() throws IOException {
+
+		dir = Files.createTempDirectory("prune-benchmark").toFile();
+		paths = new HashSet<>();
+
+		for (int i = 0; i < files; i++) {
+			final Path path = dir.toPath()
+					.resolve(String.format("share/dir_%04d/file_%02d.dat", i / FILES_PER_DIR, i % FILES_PER_DIR))
+					.toAbsolutePath()
+					.normalize();
+
+			Files.createDirectories(path.getParent());
+			Files.createFile(path);
+
+			if (i % 2 == 0) {
+				paths.add(path);
+			}
+		}
+
+		final Properties properties = new Properties();
+		properties.setProperty(Config.DIR, dir.getAbsolutePath());
+		properties.setProperty(Config.BUILD, Build.x86_64_pc_linux.toString());
+		properties.setProperty(Config.PRUNE, "false");
+
+		manager = new Manager(new Config(properties));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Benchmark
+	public long prune() {
+		return manager.prune(paths).count().blockingGet();
+	}
+}
@@ -0,0 +1,108 @@
+package org.quetoo.installer.aws;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quetoo.installer.Delta;
+import org.quetoo.installer.DigestCache;
+
+/**
+ * Benchmarks {@link S3Sync#delta(org.quetoo.installer.Index)} against synthetic local trees.
+ * Each tree holds roughly 64 MiB in files of the given size, a quarter of which differ from
+ * the listing. Trees are checked with and without a warm {@link DigestCache}.
+ *
+ * @author jdolan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DeltaBenchmark {
+
+	/**
+	 * The approximate size of each tree, in bytes.
+	 */
+	private static final long TREE_SIZE = 64L * 1024 * 1024;
+
+	@Param({ "4096", "1048576", "16777216" })
+	private int fileSize;
+
+	@Param({ "false", "true" })
+	private boolean cached;
+
+	private File dir;
+	private S3Sync sync;
+	private S3Bucket bucket;
+
+	@Setup
+	public void setup() throws IOException {
+
+		dir = Files.createTempDirectory("delta-benchmark").toFile();
+
+		final int count = (int) Math.max(4, Math.min(1000, TREE_SIZE / fileSize));
+
+		final String[] keys = new String[count], etags = new String[count];
+		final long[] sizes = new long[count];
+
+		final Random random = new Random(count);
+		final byte[] bytes = new byte[fileSize];
+
+		for (int i = 0; i < count; i++) {
+			random.nextBytes(bytes);
+
+			keys[i] = String.format("file_%04d.dat", i);
+			final File file = new File(dir, keys[i]);
+			FileUtils.writeByteArrayToFile(file, bytes);
+
+			etags[i] = i % 4 == 0 ? String.format("%032x", i) : S3.md5Hex(file);
+			sizes[i] = fileSize;
+		}
+
+		final DigestCache digestCache = cached ? new DigestCache(new File(dir, DigestCache.NAME)) : null;
+
+		sync = new S3Sync.Builder()
+				.withHttpClient(HttpClients.createMinimal())
+				.withBucketName("benchmark")
+				.withMapper(obj -> new File(obj.getKey()))
+				.withDestination(dir)
+				.withDigestCache(digestCache)
+				.build();
+
+		bucket = new S3Bucket(sync, new ByteArrayInputStream(Listings.page("benchmark", keys, etags, sizes, false)));
+
+		if (cached) {
+			delta();
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		sync.close();
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Benchmark
+	public Delta delta() {
+		return sync.delta(bucket).blockingGet();
+	}
+}
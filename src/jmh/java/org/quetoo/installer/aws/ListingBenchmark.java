@@ -0,0 +1,65 @@
+package org.quetoo.installer.aws;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks parsing of `ListBucketResult` pages into {@link S3Bucket}s, by the streaming
+ * parser used for listings, and by the DOM parser for comparison.
+ *
+ * @author jdolan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ListingBenchmark {
+
+	@Param({ "1000" })
+	private int keys;
+
+	private S3Sync sync;
+	private byte[] page;
+
+	@Setup
+	public void setup() {
+		sync = new S3Sync.Builder()
+				.withHttpClient(HttpClients.createMinimal())
+				.withBucketName("benchmark")
+				.build();
+
+		page = Listings.page("benchmark", keys);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		sync.close();
+	}
+
+	@Benchmark
+	public S3Bucket stream() throws IOException {
+		return new S3Bucket(sync, new ByteArrayInputStream(page));
+	}
+
+	@Benchmark
+	public S3Bucket dom() throws IOException {
+		return new S3Bucket(sync, S3.getDocument(new ByteArrayInputStream(page)));
+	}
+}
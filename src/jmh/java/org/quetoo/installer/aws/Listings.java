@@ -0,0 +1,78 @@
+package org.quetoo.installer.aws;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Synthetic ListObjectsV2 responses for benchmarking.
+ *
+ * @author jdolan
+ */
+final class Listings {
+
+	private Listings() {
+	}
+
+	/**
+	 * Renders a `ListBucketResult` page with the given objects.
+	 *
+	 * @param bucket The bucket name.
+	 * @param keys The object keys.
+	 * @param etags The object ETags.
+	 * @param sizes The object sizes.
+	 * @param truncated True if the listing continues beyond this page.
+	 * @return The page, as UTF-8 XML.
+	 */
+	static byte[] page(final String bucket, final String[] keys, final String[] etags, final long[] sizes,
+			final boolean truncated) {
+
+		final StringBuilder xml = new StringBuilder(keys.length * 320);
+
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+				.append("<Name>").append(bucket).append("</Name>")
+				.append("<Prefix></Prefix>")
+				.append("<KeyCount>").append(keys.length).append("</KeyCount>")
+				.append("<MaxKeys>1000</MaxKeys>")
+				.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+
+		for (int i = 0; i < keys.length; i++) {
+			xml.append("<Contents>")
+					.append("<Key>").append(keys[i]).append("</Key>")
+					.append("<LastModified>2024-01-01T00:00:00.000Z</LastModified>")
+					.append("<ETag>&quot;").append(etags[i]).append("&quot;</ETag>")
+					.append("<Size>").append(sizes[i]).append("</Size>")
+					.append("<StorageClass>STANDARD</StorageClass>")
+					.append("</Contents>");
+		}
+
+		if (truncated) {
+			xml.append("<NextContinuationToken>1ueGcxLPRx1Tr/XYExHnhbYLgveDs2J/wm36Hy4vbOwM=</NextContinuationToken>");
+		}
+
+		xml.append("</ListBucketResult>");
+
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Renders a `ListBucketResult` page of `count` synthetic objects, a tenth of which are
+	 * multipart uploads.
+	 *
+	 * @param bucket The bucket name.
+	 * @param count The number of objects.
+	 * @return The page, as UTF-8 XML.
+	 */
+	static byte[] page(final String bucket, final int count) {
+
+		final String[] keys = new String[count], etags = new String[count];
+		final long[] sizes = new long[count];
+
+		for (int i = 0; i < count; i++) {
+			keys[i] = String.format("default/textures/common/texture_%05d.tga", i);
+			etags[i] = String.format("%032x", (long) i * 0x9e3779b97f4a7c15L) + (i % 10 == 0 ? "-3" : "");
+			sizes[i] = 1024L * (i % 4096);
+		}
+
+		return page(bucket, keys, etags, sizes, true);
+	}
+}
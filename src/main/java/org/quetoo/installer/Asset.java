@@ -15,6 +15,11 @@ public interface Asset {
 	 */
 	String getName();
 
+	/**
+	 * @return The asset entity tag, which changes whenever the asset's content does.
+	 */
+	String getEtag();
+
 	/**
 	 * @return The asset size in bytes.
 	 */
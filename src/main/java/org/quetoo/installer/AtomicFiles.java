@@ -0,0 +1,33 @@
+package org.quetoo.installer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Utilities for replacing files without exposing partially written content.
+ *
+ * @author jdolan
+ */
+public final class AtomicFiles {
+
+	private AtomicFiles() {
+	}
+
+	/**
+	 * Moves `source` to `target`, replacing it. The move is atomic where the file system allows,
+	 * and falls back to a plain move where it does not.
+	 *
+	 * @param source The completely written file.
+	 * @param target The file to create or replace.
+	 * @throws IOException If an error occurs.
+	 */
+	public static void move(final Path source, final Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ioe) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
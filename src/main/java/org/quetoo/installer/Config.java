@@ -1,14 +1,27 @@
 package org.quetoo.installer;
 
 import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
 import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 	
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import org.quetoo.installer.aws.S3RequestExecutor;
 
 /**
  * The configuration container.
@@ -24,16 +37,51 @@ public class Config {
 	public static final String DIR = "quetoo.installer.dir";
 	public static final String PRUNE = "quetoo.installer.prune";
 	public static final String CONSOLE = "quetoo.installer.console";
+	public static final String CONCURRENCY = "quetoo.installer.concurrency";
+	public static final String MAX_RATE = "quetoo.installer.max-rate";
+	public static final String RATE_FILE = "quetoo.installer.rate-file";
+	public static final String CONNECTIONS = "quetoo.installer.connections";
+	public static final String TIMEOUT = "quetoo.installer.timeout";
+	public static final String HEDGE = "quetoo.installer.hedge";
+	public static final String PRIORITY = "quetoo.installer.priority";
+	public static final String STORE = "quetoo.installer.store";
+	public static final String STORE_SIZE = "quetoo.installer.store-size";
+	public static final String TARGETS = "quetoo.installer.targets";
+	public static final String ENDPOINT = "quetoo.installer.endpoint";
+
+	/**
+	 * The separator of {@link #PRIORITY} patterns. Unlike commas, it has no meaning in glob
+	 * syntax, so patterns such as `lib/*.{so,dll}` may be given.
+	 */
+	public static final String PRIORITY_SEPARATOR = ";";
+
+	/**
+	 * The duration, in seconds, for which idle connections are kept alive, unless the server
+	 * specifies otherwise.
+	 */
+	private static final long KEEP_ALIVE = 30;
 
 	private static final Config defaults = new Config();
 
 	private final CodeSource codeSource;
-	private final CloseableHttpClient httpClient;
+	private final Properties properties;
+	private CloseableHttpClient httpClient;
 	private final Build build;
 	private final File jar;
 	private final File dir;
 	private final Boolean prune;
 	private final Boolean console;
+	private final Integer concurrency;
+	private final Long maxRate;
+	private final File rateFile;
+	private final Integer connections;
+	private final Integer timeout;
+	private final Double hedge;
+	private final List<String> priority;
+	private final File store;
+	private final Long storeSize;
+	private final List<Config> targets;
+	private final URI endpoint;
 
 	/**
 	 * Default constructor.
@@ -49,7 +97,7 @@ public class Config {
 	 */
 	public Config(final Properties properties) {
 
-		httpClient = HttpClients.createDefault();
+		this.properties = properties;
 
 		codeSource = getClass().getProtectionDomain().getCodeSource();
 		jar = FileUtils.toFile(codeSource.getLocation());
@@ -68,6 +116,106 @@ public class Config {
 
 		prune = Boolean.parseBoolean(properties.getProperty(PRUNE, "false"));
 		console = Boolean.parseBoolean(properties.getProperty(CONSOLE, "false"));
+		concurrency = Integer.parseInt(properties.getProperty(CONCURRENCY, "8"));
+		maxRate = Long.parseLong(properties.getProperty(MAX_RATE, "0"));
+
+		if (properties.containsKey(RATE_FILE)) {
+			rateFile = new File(properties.getProperty(RATE_FILE));
+		} else {
+			rateFile = null;
+		}
+
+		connections = Integer.parseInt(properties.getProperty(CONNECTIONS, "16"));
+		timeout = Integer.parseInt(properties.getProperty(TIMEOUT, "30000"));
+		hedge = Double.parseDouble(properties.getProperty(HEDGE, "0.95"));
+
+		if (properties.containsKey(PRIORITY)) {
+			priority = Arrays.stream(StringUtils.split(properties.getProperty(PRIORITY), PRIORITY_SEPARATOR))
+					.map(StringUtils::trim)
+					.filter(StringUtils::isNotEmpty)
+					.collect(Collectors.toList());
+		} else {
+			priority = resolvePriority();
+		}
+
+		if (properties.containsKey(STORE)) {
+			store = new File(properties.getProperty(STORE));
+		} else {
+			store = null;
+		}
+
+		storeSize = Long.parseLong(properties.getProperty(STORE_SIZE, Long.toString(10L << 30)));
+
+		if (properties.containsKey(ENDPOINT)) {
+			endpoint = URI.create(properties.getProperty(ENDPOINT));
+		} else {
+			endpoint = null;
+		}
+
+		if (properties.containsKey(TARGETS)) {
+			targets = Arrays.stream(StringUtils.split(properties.getProperty(TARGETS), File.pathSeparatorChar))
+					.map(StringUtils::trim)
+					.filter(StringUtils::isNotEmpty)
+					.map(this::resolveTarget)
+					.collect(Collectors.toList());
+		} else {
+			targets = Collections.singletonList(this);
+		}
+	}
+
+	/**
+	 * Resolves the configuration of an installation target, which inherits all but its build
+	 * and directory from this configuration.
+	 * 
+	 * @param target The target, as `dir` or `dir=build`.
+	 * @return The target configuration.
+	 */
+	private Config resolveTarget(final String target) {
+
+		final Properties properties = new Properties(this.properties);
+		properties.putAll(this.properties);
+		properties.remove(TARGETS);
+
+		properties.setProperty(DIR, StringUtils.substringBefore(target, "=").trim());
+		properties.setProperty(BUILD, target.contains("=") ? StringUtils.substringAfter(target, "=").trim() : build.toString());
+
+		return new Config(properties);
+	}
+
+	/**
+	 * Creates the HTTP client shared by all {@link Sync}s. Connections are pooled and kept
+	 * alive, and the pool allows {@link #getConnections()} connections to each host, so that
+	 * concurrent requests do not queue for a socket or repeat the TLS handshake. Transparent
+	 * content compression is disabled, so that object downloads are transferred, resumed and
+	 * validated byte for byte; requests that benefit from compression negotiate it themselves.
+	 * The time at which each request is sent is recorded, so that hedging does not count the
+	 * time spent waiting for a pooled connection.
+	 * 
+	 * @return The HTTP client.
+	 */
+	private CloseableHttpClient createHttpClient() {
+
+		final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(connections * 2);
+		connectionManager.setDefaultMaxPerRoute(connections);
+
+		final RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(timeout)
+				.setSocketTimeout(timeout)
+				.build();
+
+		return HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.disableContentCompression()
+				.setRequestExecutor(new S3RequestExecutor())
+				.setKeepAliveStrategy((response, context) -> {
+					final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+					return duration > 0 ? duration : TimeUnit.SECONDS.toMillis(KEEP_ALIVE);
+				})
+				.evictExpiredConnections()
+				.evictIdleConnections(KEEP_ALIVE, TimeUnit.SECONDS)
+				.build();
 	}
 
 	/**
@@ -99,6 +247,21 @@ public class Config {
 		return pwd;
 	}
 
+	/**
+	 * @return The default download priority classes: executables, then libraries, then the rest.
+	 * Where libraries reside within the executables directory, as on macOS, only its immediate
+	 * children are executables.
+	 */
+	private List<String> resolvePriority() {
+
+		final Path dir = getDir().toPath();
+		final Path bin = dir.relativize(getBin().toPath()), lib = dir.relativize(getLib().toPath());
+
+		return Stream.of(bin + (lib.startsWith(bin) ? "/*" : "/**"), lib + "/**")
+				.map(pattern -> pattern.replace(File.separatorChar, '/'))
+				.collect(Collectors.toList());
+	}
+
 	/**
 	 * @return True if the executable jar resides within the destination directory.
 	 */
@@ -121,7 +284,13 @@ public class Config {
 		return jar;
 	}
 
-	public CloseableHttpClient getHttpClient() {
+	/**
+	 * @return The HTTP client, which is created on first use.
+	 */
+	public synchronized CloseableHttpClient getHttpClient() {
+		if (httpClient == null) {
+			httpClient = createHttpClient();
+		}
 		return httpClient;
 	}
 
@@ -169,6 +338,65 @@ public class Config {
 		return console;
 	}
 
+	public Integer getConcurrency() {
+		return concurrency;
+	}
+
+	public Long getMaxRate() {
+		return maxRate;
+	}
+
+	/**
+	 * @return The file from which the maximum rate is read while updating, or null.
+	 */
+	public File getRateFile() {
+		return rateFile;
+	}
+
+	public Integer getConnections() {
+		return connections;
+	}
+
+	public Integer getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return The latency percentile beyond which requests are hedged, or 0 to disable hedging.
+	 */
+	public Double getHedge() {
+		return hedge;
+	}
+
+	public List<String> getPriority() {
+		return priority;
+	}
+
+	/**
+	 * @return The shared {@link ContentStore} directory, or null if none is configured.
+	 */
+	public File getStore() {
+		return store;
+	}
+
+	public Long getStoreSize() {
+		return storeSize;
+	}
+
+	/**
+	 * @return The S3 compatible endpoint to synchronize from, or null for Amazon S3.
+	 */
+	public URI getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return The installation targets: those configured, or this configuration alone.
+	 */
+	public List<Config> getTargets() {
+		return targets;
+	}
+
 	public static Config getDefaults() {
 		return defaults;
 	}
@@ -32,7 +32,7 @@ public class Console {
 	 */
 	private void update() {
 		
-		System.out.println("Updating " + manager.getConfig().getDir());
+		manager.getTargets().forEach(target -> System.out.println("Updating " + target.getConfig().getDir()));
 		
 		final Observable<File> files = manager.sync(
 				manager.delta(
@@ -0,0 +1,269 @@
+package org.quetoo.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.io.FileUtils;
+import org.quetoo.installer.aws.S3;
+
+/**
+ * A content-addressable store of downloaded files, keyed by ETag, which may be shared by any
+ * number of installation directories on the same machine. Files are populated from the store
+ * by hard link where the file system allows, and by copy otherwise, so that an object common
+ * to several installations is downloaded, and with hard links stored, only once.
+ *
+ * The store is bounded in size. When it grows beyond its bound, the least recently used
+ * blobs no longer linked from any installation are evicted. Use is recorded on a marker file
+ * beside each blob, rather than on the blob itself, as the blob shares its modification time
+ * with every file linked to it.
+ *
+ * @author jdolan
+ */
+public class ContentStore {
+
+	/**
+	 * The file name suffix of the markers recording the last use of each blob.
+	 */
+	private static final String USED = ".used";
+
+	/**
+	 * The file name suffix of blobs and links being written.
+	 */
+	private static final String TMP = ".tmp";
+
+	private final File dir;
+	private final long maxSize;
+
+	/**
+	 * Instantiates a {@link ContentStore}.
+	 *
+	 * @param dir The store directory.
+	 * @param maxSize The size, in bytes, beyond which unreferenced blobs are evicted.
+	 */
+	public ContentStore(final File dir, final long maxSize) {
+		this.dir = dir;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param etag The ETag.
+	 * @return The blob for the given ETag, or null if the ETag is malformed, and may not be
+	 * used as a path.
+	 */
+	private Path blob(final String etag) {
+
+		if (!S3.isEtag(etag)) {
+			return null;
+		}
+
+		return dir.toPath().resolve(etag.substring(0, 2)).resolve(etag);
+	}
+
+	/**
+	 * @param path The Path.
+	 * @return A unique temporary Path beside `path`.
+	 */
+	private static Path temp(final Path path) {
+		return path.resolveSibling(path.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TMP);
+	}
+
+	/**
+	 * Records the use of the given blob.
+	 *
+	 * @param blob The blob.
+	 */
+	private static void touch(final Path blob) {
+
+		final Path used = blob.resolveSibling(blob.getFileName() + USED);
+		try {
+			try {
+				Files.createFile(used);
+			} catch (FileAlreadyExistsException faee) {
+				Files.setLastModifiedTime(used, FileTime.fromMillis(System.currentTimeMillis()));
+			}
+		} catch (IOException ioe) {
+			// the blob will simply appear less recently used
+		}
+	}
+
+	/**
+	 * Links `target` to `source`, or copies `source` to it if they can not be linked. The link
+	 * or copy is made under a temporary name, and then moved into place.
+	 *
+	 * @param source The existing file.
+	 * @param target The file to create or replace.
+	 * @throws IOException If an error occurs.
+	 */
+	private static void link(final Path source, final Path target) throws IOException {
+
+		final Path temp = temp(target);
+
+		try {
+			try {
+				Files.createLink(temp, source);
+			} catch (IOException | UnsupportedOperationException e) {
+				Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			AtomicFiles.move(temp, target);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Populates `file` from the blob with the given ETag, if the store holds it.
+	 *
+	 * @param etag The ETag.
+	 * @param size The expected size.
+	 * @param file The file to create or replace.
+	 * @return True if `file` was populated, false if the store does not hold the blob.
+	 */
+	public boolean get(final String etag, final long size, final File file) {
+
+		final Path blob = blob(etag);
+		if (blob == null) {
+			return false;
+		}
+
+		try {
+			if (Files.size(blob) != size) {
+				return false;
+			}
+
+			link(blob, file.toPath());
+			touch(blob);
+			return true;
+		} catch (IOException ioe) {
+			return false;
+		}
+	}
+
+	/**
+	 * Adds `file` to the store as the blob with the given ETag, unless it is already held.
+	 * The store is not trimmed until {@link #evict()} is called.
+	 *
+	 * @param etag The ETag of `file`.
+	 * @param file The file, which must be complete and validated.
+	 */
+	public void put(final String etag, final File file) {
+
+		final Path blob = blob(etag);
+		if (blob == null) {
+			return;
+		}
+
+		try {
+			if (!Files.exists(blob)) {
+				Files.createDirectories(blob.getParent());
+				link(file.toPath(), blob);
+			}
+
+			touch(blob);
+		} catch (IOException ioe) {
+			// the file will simply be downloaded again where it is needed
+		}
+	}
+
+	/**
+	 * @param blob The blob.
+	 * @return True if the blob is linked from outside the store.
+	 */
+	private static boolean isReferenced(final Path blob) {
+		try {
+			return ((Number) Files.getAttribute(blob, "unix:nlink")).intValue() > 1;
+		} catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * A blob, as considered for eviction.
+	 */
+	private static class Blob {
+
+		private final Path path;
+		private final long size;
+		private final long used;
+
+		private Blob(final Path path, final long size, final long used) {
+			this.path = path;
+			this.size = size;
+			this.used = used;
+		}
+	}
+
+	/**
+	 * Evicts the least recently used, unreferenced blobs until the store fits its maximum size.
+	 * Blobs still linked from an installation are retained, as evicting them would free no
+	 * space.
+	 *
+	 * @throws IOException If an error occurs.
+	 */
+	public synchronized void evict() throws IOException {
+
+		if (maxSize <= 0 || !dir.isDirectory()) {
+			return;
+		}
+
+		final List<Blob> blobs = new ArrayList<>();
+		long total = 0;
+
+		try (DirectoryStream<Path> shards = Files.newDirectoryStream(dir.toPath(), Files::isDirectory)) {
+			for (Path shard : shards) {
+				try (DirectoryStream<Path> paths = Files.newDirectoryStream(shard)) {
+					for (Path path : paths) {
+						final String name = path.getFileName().toString();
+						if (name.endsWith(USED) || name.endsWith(TMP)) {
+							continue;
+						}
+
+						final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+						total += attributes.size();
+
+						if (!isReferenced(path)) {
+							final File used = new File(path + USED);
+							final long lastUsed = used.exists() ? used.lastModified() : attributes.lastModifiedTime().toMillis();
+							blobs.add(new Blob(path, attributes.size(), lastUsed));
+						}
+					}
+				}
+			}
+		}
+
+		if (total <= maxSize) {
+			return;
+		}
+
+		blobs.sort(Comparator.comparingLong(blob -> blob.used));
+
+		for (Blob blob : blobs) {
+			if (total <= maxSize) {
+				break;
+			}
+
+			Files.deleteIfExists(blob.path);
+			FileUtils.deleteQuietly(new File(blob.path + USED));
+			total -= blob.size;
+		}
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+}
@@ -0,0 +1,91 @@
+package org.quetoo.installer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A persistent cache of local file digests, stored as tab-separated text.
+ *
+ * @author jdolan
+ */
+public class DigestCache extends FileTable {
+
+	/**
+	 * The default cache file name, relative to the installation directory.
+	 */
+	public static final String NAME = ".quetoo-installer-digests";
+
+	/**
+	 * Instantiates a {@link DigestCache} backed by the given File.
+	 *
+	 * @param file The cache file.
+	 */
+	public DigestCache(final File file) {
+		super(file);
+	}
+
+	/**
+	 * Resolves the cached digest for the given File. Stale entries are evicted.
+	 *
+	 * @param file The File.
+	 * @return The cached digest, or null if the File is not cached or has changed.
+	 */
+	public String get(final File file) {
+		final Entry entry = current(file);
+		return entry != null ? entry.digest : null;
+	}
+
+	/**
+	 * Caches the digest for the given File, as of its current size and modification time.
+	 *
+	 * @param file The File.
+	 * @param digest The digest.
+	 */
+	public void put(final File file, final String digest) {
+
+		final Entry entry = entry(file, digest);
+		if (entry != null) {
+			entries.put(key(file), entry);
+		} else {
+			entries.remove(key(file));
+		}
+	}
+
+	@Override
+	protected void read(final InputStream in, final Map<String, Entry> entries) throws IOException {
+
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			final String[] fields = line.split("\t", 4);
+			if (fields.length == 4) {
+				final long size = Long.parseLong(fields[0]);
+				final long lastModified = Long.parseLong(fields[1]);
+				entries.put(fields[3], new Entry(fields[2], size, lastModified));
+			}
+		}
+	}
+
+	@Override
+	protected void write(final OutputStream out, final Map<String, Entry> entries) throws IOException {
+
+		final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			final Entry entry = e.getValue();
+			writer.write(entry.size + "\t" + entry.lastModified + "\t" + entry.digest + "\t" + e.getKey());
+			writer.newLine();
+		}
+
+		writer.flush();
+	}
+}
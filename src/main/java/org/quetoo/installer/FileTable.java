@@ -0,0 +1,201 @@
+package org.quetoo.installer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent table of digests of local files. Entries are keyed by path, relative to the
+ * directory of the table file, and record the size and modification time of the file when its
+ * digest was recorded. An entry is stale once the file no longer matches them. Subclasses
+ * define the format of the table file.
+ *
+ * @author jdolan
+ */
+public abstract class FileTable {
+
+	/**
+	 * A digest, and the file attributes it was recorded at.
+	 */
+	protected static class Entry {
+
+		protected final String digest;
+		protected final long size;
+		protected final long lastModified;
+
+		protected Entry(final String digest, final long size, final long lastModified) {
+			this.digest = digest;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private final File file;
+	private final Path root;
+
+	protected volatile Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Instantiates a {@link FileTable} backed by the given File. Existing entries are loaded if
+	 * the File is readable, otherwise the table starts empty.
+	 *
+	 * @param file The table file. Paths are stored relative to its parent directory.
+	 */
+	protected FileTable(final File file) {
+		this.file = file;
+		this.root = file.getAbsoluteFile().getParentFile().toPath().normalize();
+
+		try {
+			load();
+		} catch (IOException | RuntimeException e) {
+			entries = new ConcurrentHashMap<>();
+		}
+	}
+
+	/**
+	 * @param path The absolute, normalized Path.
+	 * @return The table key for the given Path.
+	 */
+	protected String key(final Path path) {
+		if (path.startsWith(root)) {
+			return root.relativize(path).toString().replace(File.separatorChar, '/');
+		}
+		return path.toString();
+	}
+
+	/**
+	 * @param file The File.
+	 * @return The table key for the given File.
+	 */
+	protected String key(final File file) {
+		return key(file.getAbsoluteFile().toPath().normalize());
+	}
+
+	/**
+	 * @param file The File.
+	 * @return The File's attributes, or null if they can not be read or it is not a regular file.
+	 */
+	private static BasicFileAttributes attributes(final File file) {
+		try {
+			final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			return attributes.isRegularFile() ? attributes : null;
+		} catch (IOException ioe) {
+			return null;
+		}
+	}
+
+	/**
+	 * Resolves the entry for the given File. Stale entries are evicted.
+	 *
+	 * @param file The File.
+	 * @return The entry, or null if the File is not in the table or has changed.
+	 */
+	protected Entry current(final File file) {
+
+		final String key = key(file);
+
+		final Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+
+		final BasicFileAttributes attributes = attributes(file);
+		if (attributes != null
+				&& attributes.size() == entry.size
+				&& attributes.lastModifiedTime().toMillis() == entry.lastModified) {
+			return entry;
+		}
+
+		entries.remove(key, entry);
+		return null;
+	}
+
+	/**
+	 * @param file The File.
+	 * @param digest The digest.
+	 * @return An entry for the given digest, as of the File's current size and modification
+	 * time, or null if they can not be read.
+	 */
+	protected static Entry entry(final File file, final String digest) {
+
+		final BasicFileAttributes attributes = attributes(file);
+		if (attributes == null) {
+			return null;
+		}
+
+		return new Entry(digest, attributes.size(), attributes.lastModifiedTime().toMillis());
+	}
+
+	/**
+	 * Reads the entries of the table file.
+	 *
+	 * @param in The table file InputStream.
+	 * @param entries The entries to populate.
+	 * @throws IOException If an error occurs, or the file is malformed.
+	 */
+	protected abstract void read(InputStream in, Map<String, Entry> entries) throws IOException;
+
+	/**
+	 * Writes the given entries to the table file.
+	 *
+	 * @param out The table file OutputStream.
+	 * @param entries The entries.
+	 * @throws IOException If an error occurs.
+	 */
+	protected abstract void write(OutputStream out, Map<String, Entry> entries) throws IOException;
+
+	/**
+	 * Loads the table file, replacing any entries held in memory.
+	 *
+	 * @throws IOException If an error occurs.
+	 */
+	public void load() throws IOException {
+
+		final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+		if (file.exists()) {
+			try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+				read(in, entries);
+			}
+		}
+
+		this.entries = entries;
+	}
+
+	/**
+	 * Writes the table file. The file is replaced atomically where the file system allows.
+	 *
+	 * @throws IOException If an error occurs.
+	 */
+	public void save() throws IOException {
+
+		final File temp = new File(file.getPath() + ".tmp");
+		Files.createDirectories(root);
+
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp.toPath()))) {
+			write(out, new HashMap<>(entries));
+		}
+
+		AtomicFiles.move(temp.toPath(), file.toPath());
+	}
+
+	/**
+	 * @return The number of entries.
+	 */
+	public int count() {
+		return entries.size();
+	}
+
+	public File getFile() {
+		return file;
+	}
+}
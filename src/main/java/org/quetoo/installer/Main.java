@@ -5,7 +5,11 @@ import static org.quetoo.installer.Config.getDefaults;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.stream.Collectors;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
@@ -58,12 +62,100 @@ public class Main {
 				.desc("do not create the user interface")
 				.build();
 
+		final Option concurrency = Option.builder("j")
+				.longOpt("concurrency")
+				.hasArg()
+				.argName(getDefaults().getConcurrency().toString())
+				.desc("the number of concurrent downloads")
+				.build();
+
+		final Option maxRate = Option.builder("r")
+				.longOpt("max-rate")
+				.hasArg()
+				.argName(getDefaults().getMaxRate().toString())
+				.desc("the maximum download rate in bytes per second, 0 for unlimited")
+				.build();
+
+		final Option rateFile = Option.builder("f")
+				.longOpt("rate-file")
+				.hasArg()
+				.argName("file")
+				.desc("a file holding the maximum download rate, re-read while updating when it changes")
+				.build();
+
+		final Option connections = Option.builder("n")
+				.longOpt("connections")
+				.hasArg()
+				.argName(getDefaults().getConnections().toString())
+				.desc("the maximum number of connections per host")
+				.build();
+
+		final Option timeout = Option.builder("t")
+				.longOpt("timeout")
+				.hasArg()
+				.argName(getDefaults().getTimeout().toString())
+				.desc("the connect and read timeout in milliseconds")
+				.build();
+
+		final Option hedge = Option.builder("g")
+				.longOpt("hedge")
+				.hasArg()
+				.argName(getDefaults().getHedge().toString())
+				.desc("the latency percentile beyond which slow requests are duplicated, 0 to disable")
+				.build();
+
+		final Option priority = Option.builder("o")
+				.longOpt("priority")
+				.hasArg()
+				.argName("patterns")
+				.desc("path patterns to download first, in order, separated by '" + Config.PRIORITY_SEPARATOR + "'")
+				.build();
+
+		final Option store = Option.builder("s")
+				.longOpt("store")
+				.hasArg()
+				.argName("dir")
+				.desc("a content store to share downloads with other installations")
+				.build();
+
+		final Option storeSize = Option.builder("z")
+				.longOpt("store-size")
+				.hasArg()
+				.argName(getDefaults().getStoreSize().toString())
+				.desc("the size in bytes beyond which unused content is evicted from the store")
+				.build();
+
+		final Option targets = Option.builder("m")
+				.longOpt("targets")
+				.hasArg()
+				.argName("dir[=build]" + File.pathSeparator + "..")
+				.desc("several installations to update at once, listing and downloading each asset only once")
+				.build();
+
+		final Option endpoint = Option.builder("e")
+				.longOpt("endpoint")
+				.hasArg()
+				.argName("uri")
+				.desc("an S3 compatible endpoint to update from, rather than Amazon S3")
+				.build();
+
 		final Options options = new Options();
 
 		options.addOption(build);
 		options.addOption(dir);
 		options.addOption(prune);
 		options.addOption(console);
+		options.addOption(concurrency);
+		options.addOption(maxRate);
+		options.addOption(rateFile);
+		options.addOption(connections);
+		options.addOption(timeout);
+		options.addOption(hedge);
+		options.addOption(priority);
+		options.addOption(store);
+		options.addOption(storeSize);
+		options.addOption(targets);
+		options.addOption(endpoint);
 
 		final Properties properties = new Properties();
 
@@ -91,7 +183,7 @@ public class Main {
 				final File tempFile = Files.createTempFile("quetoo-installer",".jar").toFile();
 				FileUtils.copyFile(config.getJar(), tempFile);
 
-				new ProcessBuilder().inheritIO().command(new String[] {
+				final List<String> command = new ArrayList<>(Arrays.asList(
 						SystemUtils.JAVA_HOME + "/bin/java",
 						"-jar",
 						tempFile.getAbsolutePath(),
@@ -102,8 +194,46 @@ public class Main {
 						"--prune",
 						config.getPrune().toString(),
 						"--console",
-						config.getConsole().toString()
-				}).start();
+						config.getConsole().toString(),
+						"--concurrency",
+						config.getConcurrency().toString(),
+						"--max-rate",
+						config.getMaxRate().toString(),
+						"--connections",
+						config.getConnections().toString(),
+						"--timeout",
+						config.getTimeout().toString(),
+						"--hedge",
+						config.getHedge().toString(),
+						"--priority",
+						String.join(Config.PRIORITY_SEPARATOR, config.getPriority()),
+						"--store-size",
+						config.getStoreSize().toString()
+				));
+
+				if (config.getStore() != null) {
+					command.add("--store");
+					command.add(config.getStore().getAbsolutePath());
+				}
+
+				if (config.getRateFile() != null) {
+					command.add("--rate-file");
+					command.add(config.getRateFile().getAbsolutePath());
+				}
+
+				if (config.getEndpoint() != null) {
+					command.add("--endpoint");
+					command.add(config.getEndpoint().toString());
+				}
+
+				if (!config.getTargets().contains(config)) {
+					command.add("--targets");
+					command.add(config.getTargets().stream()
+							.map(target -> target.getDir().getAbsolutePath() + "=" + target.getBuild())
+							.collect(Collectors.joining(File.pathSeparator)));
+				}
+
+				new ProcessBuilder().inheritIO().command(command).start();
 			} catch (IOException ioe) {
 				ioe.printStackTrace(System.err);
 				System.exit(2);
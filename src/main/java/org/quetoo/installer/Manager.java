@@ -1,22 +1,58 @@
 package org.quetoo.installer;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
 import org.quetoo.installer.aws.S3Sync;
 
 import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
 
 /**
- * The manager.
+ * The manager. Each bucket is listed once, and the listing shared by every {@link Target},
+ * each of which then calculates its own delta. Each distinct asset is downloaded once, and
+ * copied to every other {@link Target} that requires it.
  * 
  * @author jdolan
  */
 public class Manager {
+
+	/**
+	 * The period, in milliseconds, at which the rate file is polled while synchronizing.
+	 */
+	private static final long RATE_FILE_PERIOD = 1000;
 	
 	private final Config config;
-	private final Sync quetoo, quetooData;
+	private final RateLimiter rateLimiter;
+	private final ContentStore contentStore;
+	private final ExecutorService deltaExecutor;
+	private final List<Target> targets;
+	private final Schedule schedule;
+	private final S3Sync quetoo, quetooData;
+
+	private volatile Map<Path, Asset> snapshot;
 		
 	/**
 	 * Instantiates a {@link Manager} with the specified {@link Config}.
@@ -25,33 +61,90 @@ public class Manager {
 	 */
 	public Manager(final Config config) {
 		this.config = config;
-		
-		final String buildName = config.getBuild().toString();
-		
+
+		rateLimiter = new RateLimiter(config.getMaxRate());
+
+		if (config.getStore() != null) {
+			contentStore = new ContentStore(config.getStore(), config.getStoreSize());
+		} else {
+			contentStore = null;
+		}
+
+		final AtomicInteger threads = new AtomicInteger();
+		deltaExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+			final Thread thread = new Thread(runnable, "delta-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		targets = config.getTargets().stream()
+				.map(target -> new Target(target, config.getHttpClient(), deltaExecutor, rateLimiter, contentStore))
+				.collect(Collectors.toList());
+
+		schedule = new Schedule(targets.stream()
+				.map(target -> target.getConfig().getDir())
+				.collect(Collectors.toList()), config.getPriority());
+
+		final String prefix = StringUtils.getCommonPrefix(targets.stream()
+				.map(target -> target.getConfig().getBuild().toString())
+				.toArray(String[]::new));
+
 		quetoo = new S3Sync.Builder()
 				.withHttpClient(config.getHttpClient())
-				.withBucketName("quetoo")
-				.withPredicate(s -> s.getKey().startsWith(buildName))
-				.withMapper(s -> new File(s.getKey().replace(buildName, "")))
-				.withDestination(config.getDir())
+				.withEndpoint(config.getEndpoint())
+				.withBucketName(Target.QUETOO)
+				.withPrefix(prefix)
+				.withDeltaExecutor(deltaExecutor)
+				.withPrewarm(config.getConcurrency())
+				.withHedging(config.getHedge())
 				.build();
 				
 		quetooData = new S3Sync.Builder()
 				.withHttpClient(config.getHttpClient())
-				.withBucketName("quetoo-data")
-				.withPredicate(s -> true)
-				.withMapper(s -> new File(s.getKey()))
-				.withDestination(config.getData())
+				.withEndpoint(config.getEndpoint())
+				.withBucketName(Target.QUETOO_DATA)
+				.withDeltaExecutor(deltaExecutor)
+				.withPrewarm(config.getConcurrency())
+				.withHedging(config.getHedge())
 				.build();
 	}
 	
 	/**
-	 * Fetches the merged indices from the configured {@link Sync}s.
+	 * Fetches the merged indices of all {@link Target}s, listing each bucket only once. All
+	 * indexed {@link Asset}s are retained by path once the indices are complete, so that
+	 * {@link #prune()} need not fetch them again, and so that the {@link Manifest}s may be
+	 * updated once they are applied.
 	 * 
 	 * @return The merged indices.
 	 */
 	public Observable<Index> index() {
-		return Observable.merge(quetoo.index(), quetooData.index());
+		return Observable.defer(() -> {
+			final Observable<Index> quetooListing = quetoo.index().cache();
+			final Observable<Index> quetooDataListing = quetooData.index().cache();
+
+			final Map<Path, Asset> assets = new ConcurrentHashMap<>();
+			return Observable.fromIterable(targets)
+					.flatMap(target -> target.index(quetooListing, quetooDataListing))
+					.doOnSubscribe(disposable -> snapshot = null)
+					.doOnNext(index -> index.forEach(asset -> assets.put(path(asset), asset)))
+					.doOnComplete(() -> snapshot = assets);
+		});
+	}
+
+	/**
+	 * @param asset The {@link Asset}.
+	 * @return The absolute, normalized Path of the given {@link Asset}.
+	 */
+	private Path path(final Asset asset) {
+		return asset.getIndex().getSync().map(asset).toPath().toAbsolutePath().normalize();
+	}
+
+	/**
+	 * @param target The {@link Target}.
+	 * @return The absolute, normalized Path of the given {@link Target}.
+	 */
+	private static Path path(final Target target) {
+		return target.getConfig().getDir().toPath().toAbsolutePath().normalize();
 	}
 	
 	/**
@@ -65,41 +158,235 @@ public class Manager {
 	}
 
 	/**
-	 * Synchronizes the destination directory using the given merged deltas.
+	 * Groups the given, scheduled {@link Asset}s by content. Assets with the same ETag and size
+	 * are downloaded once, regardless of the {@link Target} or key they belong to.
+	 * 
+	 * @param assets The {@link Asset}s, in the order they should be downloaded.
+	 * @return The {@link Asset}s grouped by content, in the order they should be downloaded.
+	 */
+	private Collection<List<Asset>> group(final List<Asset> assets) {
+
+		final Map<String, List<Asset>> groups = new LinkedHashMap<>();
+
+		for (Asset asset : assets) {
+			final String content = asset.isDirectory() ? path(asset).toString() : asset.getEtag() + "/" + asset.size();
+			groups.computeIfAbsent(content, key -> new ArrayList<>(1)).add(asset);
+		}
+
+		return groups.values();
+	}
+
+	/**
+	 * Synchronizes a group of {@link Asset}s sharing the same content. The first is downloaded,
+	 * and then copied to the others. Should the first not be applied, because its content is
+	 * no longer available, the others are left as they are, and all are added to `unapplied`.
+	 * 
+	 * @param assets The {@link Asset}s.
+	 * @param unapplied The paths of {@link Asset}s that were not applied.
+	 * @return An Observable yielding the synchronized files.
+	 */
+	private Observable<File> sync(final List<Asset> assets, final Set<Path> unapplied) {
+
+		final Asset first = assets.get(0);
+
+		return first.getIndex().getSync().sync(first)
+				.doOnComplete(() -> assets.forEach(asset -> unapplied.add(path(asset))))
+				.flatMapObservable(file -> {
+					return Observable.fromIterable(assets.subList(1, assets.size()))
+							.concatMapSingle(asset -> asset.getIndex().getSync().sync(asset, file))
+							.startWith(file);
+				});
+	}
+
+	/**
+	 * Synchronizes the destination directories using the given merged deltas. The assets of
+	 * all deltas are downloaded through a single pool, in the order given by the
+	 * {@link Schedule}, and each distinct asset only once. The {@link DigestCache}s are
+	 * written, and the {@link ContentStore} trimmed, when synchronization terminates, and the
+	 * {@link Manifest}s are written when it completes successfully. Assets that were not applied
+	 * are left out of the {@link Manifest}s, so that they are checked again. While synchronizing,
+	 * the rate file, if one is configured, is polled for changes to the maximum rate.
 	 * 
 	 * @param deltas The merged deltas.
 	 * @return An Observable yielding the synchronized files.
 	 */
 	public Observable<File> sync(final Observable<Delta> deltas) {
-		return deltas.flatMap(delta -> delta.getIndex().getSync().sync(delta))
-				.doOnNext(file -> {
-					if (file.getParentFile().equals(config.getBin())) {
-						file.setExecutable(true);
-					}
-				});
+
+		final Set<File> bins = targets.stream()
+				.map(target -> target.getConfig().getBin())
+				.collect(Collectors.toSet());
+
+		return Observable.using(this::watchRateFile, watch -> {
+
+			final Set<Path> unapplied = ConcurrentHashMap.newKeySet();
+
+			return deltas.toList()
+					.flatMapObservable(list -> Observable.fromIterable(group(schedule.order(list))))
+					.flatMap(assets -> sync(assets, unapplied), config.getConcurrency())
+					.doOnNext(file -> {
+						if (bins.contains(file.getParentFile())) {
+							file.setExecutable(true);
+						}
+					})
+					.doOnComplete(() -> {
+						final Map<Path, Asset> assets = snapshot;
+						if (assets != null) {
+							for (Target target : targets) {
+								final Path root = path(target);
+								target.getManifest().update(assets.entrySet().stream()
+										.filter(entry -> entry.getKey().startsWith(root))
+										.filter(entry -> !unapplied.contains(entry.getKey()))
+										.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+								target.getManifest().save();
+							}
+						}
+					})
+					.doOnTerminate(() -> {
+						for (Target target : targets) {
+							target.getDigestCache().save();
+						}
+						if (contentStore != null) {
+							contentStore.evict();
+						}
+					});
+		}, Disposable::dispose);
 	}
 
 	/**
-	 * Prunes the destination directory, purging files not present in the specified indices.
+	 * @return A Disposable which stops polling the rate file, if one is configured.
+	 */
+	private Disposable watchRateFile() {
+		if (config.getRateFile() == null) {
+			return Disposables.empty();
+		}
+		return rateLimiter.watch(config.getRateFile(), RATE_FILE_PERIOD);
+	}
+
+	/**
+	 * Prunes the destination directories, purging files not present in the most recently
+	 * fetched indices. The indices are fetched only if they are not yet available.
 	 * 
 	 * @return An Observable yielding the pruned files.
 	 */
 	public Observable<File> prune() {
-		return index().flatMapIterable(index -> index)
-				.map(asset -> asset.getIndex().getSync().map(asset))
-				.toList()
-				.map(files ->
-					FileUtils.listFiles(config.getDir(), null, true).stream()
-						.filter(file -> !files.contains(file))
-						.collect(Collectors.toList()))
-				.flatMapObservable(Observable::fromIterable)
-				.doOnNext(file -> {
+		return prune(false);
+	}
+
+	/**
+	 * Prunes the destination directories, purging files not present in the indices.
+	 * 
+	 * @param reindex True to fetch the indices again, false to reuse those most recently fetched.
+	 * @return An Observable yielding the pruned files.
+	 */
+	public Observable<File> prune(final boolean reindex) {
+		return Observable.defer(() -> {
+			final Map<Path, Asset> assets = snapshot;
+			if (assets != null && !reindex) {
+				return prune(assets.keySet());
+			}
+			return index().ignoreElements().andThen(Observable.defer(() -> prune(snapshot.keySet())));
+		});
+	}
+
+	/**
+	 * Prunes each {@link Target} in turn. This is package-private so that it may be
+	 * benchmarked without fetching the indices.
+	 * 
+	 * @param paths The absolute, normalized paths of all known assets.
+	 * @return An Observable yielding the pruned files.
+	 */
+	Observable<File> prune(final Set<Path> paths) {
+		return Observable.fromIterable(targets).concatMap(target -> prune(target, paths));
+	}
+
+	/**
+	 * Walks the destination directory of the given {@link Target}, emitting files that are not
+	 * among the given paths as they are encountered. If pruning is enabled, such files are
+	 * deleted, as are directories that become empty as a result.
+	 * 
+	 * @param target The {@link Target}.
+	 * @param paths The absolute, normalized paths of all known assets.
+	 * @return An Observable yielding the pruned files.
+	 */
+	private Observable<File> prune(final Target target, final Set<Path> paths) {
+		return Observable.create(source -> {
+
+			final Path root = path(target);
+			final String digests = target.getDigestCache().getFile().toPath().toAbsolutePath().normalize().toString();
+			final String manifests = target.getManifest().getFile().toPath().toAbsolutePath().normalize().toString();
+
+			if (!Files.isDirectory(root)) {
+				source.onComplete();
+				return;
+			}
+
+			final Deque<Boolean> pruned = new ArrayDeque<>();
+
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+					pruned.push(false);
+					return source.isDisposed() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+
+					if (paths.contains(file)
+							|| file.toString().startsWith(digests)
+							|| file.toString().startsWith(manifests)) {
+						return FileVisitResult.CONTINUE;
+					}
+
 					if (config.getPrune()) {
-						FileUtils.deleteQuietly(file);
+						Files.deleteIfExists(file);
+						pruned.pop();
+						pruned.push(true);
 					}
-				});
+
+					source.onNext(file.toFile());
+					return source.isDisposed() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+
+					final boolean emptied = pruned.pop();
+
+					if (emptied && !dir.equals(root) && !paths.contains(dir)) {
+						try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+							if (!entries.iterator().hasNext()) {
+								Files.delete(dir);
+								pruned.pop();
+								pruned.push(true);
+							}
+						}
+					}
+
+					return FileVisitResult.CONTINUE;
+				}
+			});
+
+			source.onComplete();
+		});
 	}
-	
+
+	/**
+	 * @return The {@link RateLimiter} shared by all downloads. Its rate may be changed while
+	 * synchronization is in progress, directly or through the rate file.
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * @return The {@link Target}s kept current by this Manager.
+	 */
+	public List<Target> getTargets() {
+		return targets;
+	}
+
 	/**
 	 * @return This Manager's {@link Config}.
 	 */
@@ -0,0 +1,115 @@
+package org.quetoo.installer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact binary record of the last successfully applied {@link Index}. For each file it
+ * holds the ETag and size of the {@link Asset}, and the modification time of the local file
+ * once it was current. Assets that are unchanged on both sides may then be skipped without
+ * being delta checked.
+ *
+ * @author jdolan
+ */
+public class Manifest extends FileTable {
+
+	/**
+	 * The default manifest file name, relative to the installation directory.
+	 */
+	public static final String NAME = ".quetoo-installer-manifest";
+
+	/**
+	 * The manifest file format identifier and version.
+	 */
+	private static final int MAGIC = 0x51494d31;
+
+	/**
+	 * Instantiates a {@link Manifest} backed by the given File.
+	 *
+	 * @param file The manifest file.
+	 */
+	public Manifest(final File file) {
+		super(file);
+	}
+
+	/**
+	 * Checks whether the given File is known to be current. This requires that the remote ETag
+	 * and size are unchanged, and that the local File's size and modification time match those
+	 * recorded when it was last applied.
+	 *
+	 * @param file The local File.
+	 * @param etag The ETag of the remote {@link Asset}.
+	 * @param size The size of the remote {@link Asset}.
+	 * @return True if the File is current, false if it must be delta checked.
+	 */
+	public boolean isCurrent(final File file, final String etag, final long size) {
+		final Entry entry = current(file);
+		return entry != null && entry.size == size && entry.digest.equals(etag);
+	}
+
+	/**
+	 * Replaces the contents of this manifest with the given, successfully applied assets.
+	 * Directories, and files that do not exist locally, are omitted.
+	 *
+	 * @param assets The applied {@link Asset}s, keyed by their absolute, normalized local Paths.
+	 */
+	public void update(final Map<Path, Asset> assets) {
+
+		final Map<String, Entry> entries = new ConcurrentHashMap<>(assets.size());
+
+		assets.forEach((path, asset) -> {
+			if (asset.isDirectory()) {
+				return;
+			}
+			final Entry entry = entry(path.toFile(), asset.getEtag());
+			if (entry != null && entry.size == asset.size()) {
+				entries.put(key(path), entry);
+			}
+		});
+
+		this.entries = entries;
+	}
+
+	@Override
+	protected void read(final InputStream in, final Map<String, Entry> entries) throws IOException {
+
+		final DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Unsupported manifest " + getFile());
+		}
+
+		final int count = data.readInt();
+		for (int i = 0; i < count; i++) {
+			final String key = data.readUTF();
+			final String etag = data.readUTF();
+			final long size = data.readLong();
+			final long lastModified = data.readLong();
+			entries.put(key, new Entry(etag, size, lastModified));
+		}
+	}
+
+	@Override
+	protected void write(final OutputStream out, final Map<String, Entry> entries) throws IOException {
+
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(entries.size());
+
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			final Entry entry = e.getValue();
+			data.writeUTF(e.getKey());
+			data.writeUTF(entry.digest);
+			data.writeLong(entry.size);
+			data.writeLong(entry.lastModified);
+		}
+
+		data.flush();
+	}
+}
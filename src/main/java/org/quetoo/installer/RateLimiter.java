@@ -0,0 +1,191 @@
+package org.quetoo.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.io.FileUtils;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * A token bucket limiting the aggregate transfer rate of every channel it wraps. The rate may
+ * be changed at any time, and takes effect for all channels immediately. It may also be read
+ * from a file, so that an external scheduler may throttle a running installer.
+ *
+ * @author jdolan
+ */
+public class RateLimiter {
+
+	private final LongSupplier clock;
+
+	private volatile long rate;
+	private double tokens;
+	private long timestamp;
+
+	/**
+	 * Instantiates a {@link RateLimiter} with the given rate.
+	 *
+	 * @param rate The rate, in bytes per second. Zero or less means unlimited.
+	 */
+	public RateLimiter(final long rate) {
+		this(rate, System::nanoTime);
+	}
+
+	/**
+	 * Instantiates a {@link RateLimiter} with the given rate and clock.
+	 *
+	 * @param rate The rate, in bytes per second. Zero or less means unlimited.
+	 * @param clock The clock, in nanoseconds.
+	 */
+	RateLimiter(final long rate, final LongSupplier clock) {
+		this.clock = clock;
+		this.rate = rate;
+		this.timestamp = clock.getAsLong();
+	}
+
+	/**
+	 * Adds the tokens accrued since the last refill, up to one second's worth.
+	 *
+	 * @param now The current time, in nanoseconds.
+	 */
+	private void refill(final long now) {
+		if (rate > 0) {
+			tokens = Math.min(rate, tokens + (now - timestamp) * rate / 1e9);
+		}
+		timestamp = now;
+	}
+
+	/**
+	 * Takes tokens for the given number of bytes. Callers borrow against future tokens, so that
+	 * concurrent callers are served in turn.
+	 *
+	 * @param bytes The number of bytes.
+	 * @return The time, in nanoseconds, until the bucket can afford them.
+	 */
+	long reserve(final long bytes) {
+
+		if (rate <= 0) {
+			return 0L;
+		}
+
+		synchronized (this) {
+			if (rate <= 0) {
+				return 0L;
+			}
+
+			refill(clock.getAsLong());
+
+			tokens -= bytes;
+			return tokens < 0 ? (long) (-tokens * 1e9 / rate) : 0L;
+		}
+	}
+
+	/**
+	 * Acquires tokens for the given number of bytes, sleeping until the bucket can afford them.
+	 *
+	 * @param bytes The number of bytes.
+	 * @throws InterruptedIOException If interrupted while waiting.
+	 */
+	public void acquire(final long bytes) throws InterruptedIOException {
+
+		final long wait = reserve(bytes);
+
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	/**
+	 * Wraps the given channel so that reads from it are limited by this {@link RateLimiter}.
+	 *
+	 * @param channel The ReadableByteChannel.
+	 * @return The rate-limited ReadableByteChannel.
+	 */
+	public ReadableByteChannel limit(final ReadableByteChannel channel) {
+		return new ReadableByteChannel() {
+
+			@Override
+			public int read(final ByteBuffer dst) throws IOException {
+				final int count = channel.read(dst);
+				if (count > 0) {
+					acquire(count);
+				}
+				return count;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return channel.isOpen();
+			}
+
+			@Override
+			public void close() throws IOException {
+				channel.close();
+			}
+		};
+	}
+
+	/**
+	 * Changes the rate. Outstanding borrowing is preserved, and the bucket is capped at one
+	 * second's worth of tokens at the new rate.
+	 *
+	 * @param rate The rate, in bytes per second. Zero or less means unlimited.
+	 */
+	public synchronized void setRate(final long rate) {
+
+		refill(clock.getAsLong());
+
+		this.rate = rate;
+
+		if (rate > 0) {
+			tokens = Math.min(rate, tokens);
+		} else {
+			tokens = 0;
+		}
+	}
+
+	public long getRate() {
+		return rate;
+	}
+
+	/**
+	 * Polls the given file for the rate, in bytes per second, until the returned Disposable is
+	 * disposed. The file is read whenever it is modified. A missing or malformed file leaves the
+	 * rate unchanged.
+	 *
+	 * @param file The rate file.
+	 * @param period The polling period, in milliseconds.
+	 * @return A Disposable which stops polling.
+	 */
+	public Disposable watch(final File file, final long period) {
+
+		final AtomicLong lastModified = new AtomicLong();
+
+		return Schedulers.io().schedulePeriodicallyDirect(() -> {
+
+			final long modified = file.lastModified();
+			if (modified == 0L || modified == lastModified.getAndSet(modified)) {
+				return;
+			}
+
+			try {
+				setRate(Long.parseLong(FileUtils.readFileToString(file, StandardCharsets.UTF_8).trim()));
+			} catch (IOException | NumberFormatException e) {
+				// the rate is left unchanged until the file is next modified
+			}
+		}, 0L, period, TimeUnit.MILLISECONDS);
+	}
+}
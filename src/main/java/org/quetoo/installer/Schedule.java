@@ -0,0 +1,98 @@
+package org.quetoo.installer;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A download scheduling policy. {@link Asset}s are ordered by priority class, and within each
+ * class by size, largest first, so that the longest transfers begin early rather than leaving
+ * a single large download running alone at the end.
+ *
+ * Priority classes are expressed as path patterns (glob syntax by default, or any syntax
+ * supported by {@link java.nio.file.FileSystem#getPathMatcher(String)}), relative to the
+ * installation directory. Assets matching no pattern are scheduled last.
+ *
+ * @author jdolan
+ */
+public class Schedule {
+
+	private final List<Path> roots;
+	private final List<PathMatcher> classes;
+
+	/**
+	 * Instantiates a {@link Schedule}.
+	 *
+	 * @param root The installation directory.
+	 * @param patterns The priority class patterns, highest priority first.
+	 */
+	public Schedule(final File root, final List<String> patterns) {
+		this(Collections.singletonList(root), patterns);
+	}
+
+	/**
+	 * Instantiates a {@link Schedule} for several installation directories. Patterns are
+	 * matched relative to whichever of them contains each {@link Asset}.
+	 *
+	 * @param roots The installation directories.
+	 * @param patterns The priority class patterns, highest priority first.
+	 */
+	public Schedule(final Collection<File> roots, final List<String> patterns) {
+		this.roots = roots.stream()
+				.map(root -> root.toPath().toAbsolutePath().normalize())
+				.collect(Collectors.toList());
+		this.classes = patterns.stream()
+				.map(pattern -> pattern.contains(":") ? pattern : "glob:" + pattern)
+				.map(FileSystems.getDefault()::getPathMatcher)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @param asset The {@link Asset}.
+	 * @return The priority class of the {@link Asset}, where lower values are scheduled first.
+	 */
+	public int getPriority(final Asset asset) {
+
+		final Path path = asset.getIndex().getSync().map(asset).toPath().toAbsolutePath().normalize();
+		final Path relative = roots.stream()
+				.filter(path::startsWith)
+				.findFirst()
+				.map(root -> root.relativize(path))
+				.orElse(path);
+
+		for (int i = 0; i < classes.size(); i++) {
+			if (classes.get(i).matches(relative)) {
+				return i;
+			}
+		}
+
+		return classes.size();
+	}
+
+	/**
+	 * Orders the {@link Asset}s of the given deltas for download.
+	 *
+	 * @param deltas The deltas.
+	 * @return The {@link Asset}s of all deltas, in the order they should be downloaded.
+	 */
+	public List<Asset> order(final Collection<Delta> deltas) {
+
+		final Map<Asset, Integer> priorities = new LinkedHashMap<>();
+		deltas.forEach(delta -> delta.forEach(asset -> priorities.put(asset, getPriority(asset))));
+
+		final Comparator<Asset> byPriority = Comparator.comparing(priorities::get);
+		final Comparator<Asset> bySize = Comparator.comparingLong(Asset::size);
+
+		return priorities.keySet().stream()
+				.sorted(byPriority.thenComparing(bySize.reversed()))
+				.collect(Collectors.toList());
+	}
+}
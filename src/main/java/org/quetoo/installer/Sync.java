@@ -3,6 +3,7 @@ package org.quetoo.installer;
 import java.io.Closeable;
 import java.io.File;
 
+import io.reactivex.Maybe;
 import io.reactivex.Observable;
 import io.reactivex.Single;
 
@@ -43,4 +44,23 @@ public interface Sync extends Closeable {
 	 * @return An Observable emitting the modified Files.
 	 */
 	Observable<File> sync(Delta delta);
+
+	/**
+	 * Synchronizes a single {@link Asset} to the configured destination directory.
+	 * 
+	 * @param asset The {@link Asset}.
+	 * @return A Maybe emitting the modified File, or completing empty if the remote source no
+	 * longer holds the indexed content, and the local File was left as it is.
+	 */
+	Maybe<File> sync(Asset asset);
+
+	/**
+	 * Synchronizes a single {@link Asset} from a local File known to hold its content, such as
+	 * the same {@link Asset} synchronized to another destination.
+	 * 
+	 * @param asset The {@link Asset}.
+	 * @param source The File holding the content of `asset`.
+	 * @return A Single emitting the modified File.
+	 */
+	Single<File> sync(Asset asset, File source);
 }
@@ -0,0 +1,110 @@
+package org.quetoo.installer;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import org.quetoo.installer.aws.S3Sync;
+
+import io.reactivex.Observable;
+
+/**
+ * An installation kept current by the {@link Manager}: a destination directory for one
+ * {@link Build}, with its own {@link DigestCache}, {@link Manifest} and {@link Sync}s.
+ *
+ * @author jdolan
+ */
+public class Target {
+
+	/**
+	 * The bucket containing the builds.
+	 */
+	public static final String QUETOO = "quetoo";
+
+	/**
+	 * The bucket containing the game data.
+	 */
+	public static final String QUETOO_DATA = "quetoo-data";
+
+	private final Config config;
+	private final DigestCache digestCache;
+	private final Manifest manifest;
+	private final S3Sync quetoo, quetooData;
+
+	/**
+	 * Instantiates a {@link Target} with the specified {@link Config}. The HTTP client, delta
+	 * executor, {@link RateLimiter} and {@link ContentStore} are shared by all targets, so that
+	 * connection and thread limits apply to the installer as a whole.
+	 *
+	 * @param config The target configuration.
+	 * @param httpClient The HTTP client shared by all downloads.
+	 * @param deltaExecutor The ExecutorService shared by all delta checks.
+	 * @param rateLimiter The {@link RateLimiter} shared by all downloads.
+	 * @param contentStore The {@link ContentStore}, or null.
+	 */
+	public Target(final Config config, final CloseableHttpClient httpClient, final ExecutorService deltaExecutor,
+			final RateLimiter rateLimiter, final ContentStore contentStore) {
+		this.config = config;
+
+		final String buildName = config.getBuild().toString();
+
+		digestCache = new DigestCache(new File(config.getDir(), DigestCache.NAME));
+		manifest = new Manifest(new File(config.getDir(), Manifest.NAME));
+
+		quetoo = new S3Sync.Builder()
+				.withHttpClient(httpClient)
+				.withEndpoint(config.getEndpoint())
+				.withBucketName(QUETOO)
+				.withPrefix(buildName)
+				.withMapper(s -> new File(s.getKey().replace(buildName, "")))
+				.withDestination(config.getDir())
+				.withConcurrency(config.getConcurrency())
+				.withDigestCache(digestCache)
+				.withDeltaExecutor(deltaExecutor)
+				.withManifest(manifest)
+				.withContentStore(contentStore)
+				.withRateLimiter(rateLimiter)
+				.withHedging(config.getHedge())
+				.build();
+
+		quetooData = new S3Sync.Builder()
+				.withHttpClient(httpClient)
+				.withEndpoint(config.getEndpoint())
+				.withBucketName(QUETOO_DATA)
+				.withPredicate(s -> true)
+				.withMapper(s -> new File(s.getKey()))
+				.withDestination(config.getData())
+				.withConcurrency(config.getConcurrency())
+				.withDigestCache(digestCache)
+				.withDeltaExecutor(deltaExecutor)
+				.withManifest(manifest)
+				.withContentStore(contentStore)
+				.withRateLimiter(rateLimiter)
+				.withHedging(config.getHedge())
+				.build();
+	}
+
+	/**
+	 * Derives the indices of this {@link Target} from the shared bucket listings.
+	 *
+	 * @param quetooListing The listing of {@link #QUETOO}.
+	 * @param quetooDataListing The listing of {@link #QUETOO_DATA}.
+	 * @return The merged indices.
+	 */
+	public Observable<Index> index(final Observable<Index> quetooListing, final Observable<Index> quetooDataListing) {
+		return Observable.merge(quetoo.index(quetooListing), quetooData.index(quetooDataListing));
+	}
+
+	public Config getConfig() {
+		return config;
+	}
+
+	public DigestCache getDigestCache() {
+		return digestCache;
+	}
+
+	public Manifest getManifest() {
+		return manifest;
+	}
+}
@@ -1,13 +1,25 @@
 package org.quetoo.installer.aws;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -21,6 +33,28 @@ import org.xml.sax.SAXException;
  */
 public class S3 {
 
+	/**
+	 * The size of the per-thread buffer used to digest local files.
+	 */
+	private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<ByteBuffer> digestBuffer =
+			ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIGEST_BUFFER_SIZE));
+
+	/**
+	 * The form of S3 ETags: the hex-encoded MD5 digest of a simple upload, or that of the part
+	 * digests of a multipart upload, followed by the number of parts.
+	 */
+	private static final Pattern ETAG = Pattern.compile("[0-9a-f]{32}(-[0-9]+)?");
+
+	private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+
+	static {
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+	}
+
 	/**
 	 * A convenience method for instantiating DocumentBuilder.
 	 * 
@@ -53,6 +87,47 @@ public class S3 {
 		}
 	}
 
+	/**
+	 * A convenience method for streaming S3 XML documents. The returned reader is positioned
+	 * on the document's root element.
+	 * 
+	 * @param inputStream The InputStream to parse.
+	 * 
+	 * @return The XMLStreamReader.
+	 * 
+	 * @throws IOException If an error occurs.
+	 */
+	public static XMLStreamReader getXMLStreamReader(final InputStream inputStream) throws IOException {
+		try {
+			final XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(inputStream);
+			reader.nextTag();
+			return reader;
+		} catch (XMLStreamException xmlse) {
+			throw new IOException(xmlse);
+		}
+	}
+
+	/**
+	 * Advances `reader` past the end of the current element, including all of its children.
+	 * 
+	 * @param reader The XMLStreamReader, positioned on a start element.
+	 * 
+	 * @throws XMLStreamException If an error occurs.
+	 */
+	public static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					break;
+			}
+		}
+	}
+
 	/**
 	 * A convenience method for resolving required child nodes.
 	 * 
@@ -124,4 +199,101 @@ public class S3 {
 
 		return Stream.of(nodes);
 	}
+
+	/**
+	 * ETags are used in local file names, so those that are not of the form that S3 reports
+	 * must not be trusted.
+	 * 
+	 * @param etag The ETag, without its surrounding quotes.
+	 * 
+	 * @return True if `etag` is of the form that S3 reports.
+	 */
+	public static boolean isEtag(final String etag) {
+		return etag != null && ETAG.matcher(etag).matches();
+	}
+
+	/**
+	 * Calculates the MD5 digest of the given File, as S3 reports it in the ETag of simple
+	 * uploads. The File is streamed through a reusable, fixed-size buffer, so heap usage
+	 * does not grow with the size of the File.
+	 * 
+	 * @param file The File.
+	 * 
+	 * @return The hex-encoded MD5 digest.
+	 * 
+	 * @throws IOException If an error occurs.
+	 */
+	public static String md5Hex(final File file) throws IOException {
+
+		final MessageDigest digest = DigestUtils.getMd5Digest();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer buffer = digestBuffer.get();
+			while (channel.read(buffer.clear()) != -1) {
+				digest.update(buffer.flip());
+			}
+		}
+
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	/**
+	 * Calculates the ETags that S3 would report for the given File, had it been uploaded in
+	 * multiple parts of each of the given sizes. All candidate part sizes are digested in a
+	 * single pass over the File, through the same buffer as {@link #md5Hex(File)}.
+	 * 
+	 * @param file The File.
+	 * @param partSizes The candidate part sizes, in bytes.
+	 * 
+	 * @return The multipart ETags (`md5-of-part-md5s-N`), in the order of `partSizes`.
+	 * 
+	 * @throws IOException If an error occurs.
+	 */
+	public static String[] multipartEtags(final File file, final long... partSizes) throws IOException {
+
+		final int count = partSizes.length;
+
+		final MessageDigest[] partDigests = new MessageDigest[count];
+		final MessageDigest[] etagDigests = new MessageDigest[count];
+		final long[] remaining = new long[count];
+		final int[] parts = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			partDigests[i] = DigestUtils.getMd5Digest();
+			etagDigests[i] = DigestUtils.getMd5Digest();
+			remaining[i] = partSizes[i];
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer buffer = digestBuffer.get();
+			while (channel.read(buffer.clear()) != -1) {
+				buffer.flip();
+				for (int i = 0; i < count; i++) {
+					final ByteBuffer view = buffer.duplicate();
+					while (view.hasRemaining()) {
+						final int length = (int) Math.min(remaining[i], view.remaining());
+						partDigests[i].update(view.limit(view.position() + length));
+						view.limit(buffer.limit());
+						remaining[i] -= length;
+						if (remaining[i] == 0) {
+							etagDigests[i].update(partDigests[i].digest());
+							remaining[i] = partSizes[i];
+							parts[i]++;
+						}
+					}
+				}
+			}
+		}
+
+		final String[] etags = new String[count];
+		for (int i = 0; i < count; i++) {
+			if (remaining[i] < partSizes[i] || parts[i] == 0) {
+				etagDigests[i].update(partDigests[i].digest());
+				parts[i]++;
+			}
+			etags[i] = Hex.encodeHexString(etagDigests[i].digest()) + "-" + parts[i];
+		}
+
+		return etags;
+	}
 }
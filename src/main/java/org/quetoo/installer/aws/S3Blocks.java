@@ -0,0 +1,354 @@
+package org.quetoo.installer.aws;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The block checksums of an {@link S3Object}, published alongside it as a sidecar object
+ * whose key is that of the object, suffixed with {@link #SUFFIX}. Each block of the object
+ * has a weak, rolling checksum and a strong MD5 digest. A local file can thus be scanned for
+ * blocks of the object at any offset, in the manner of rsync, so that only the blocks not
+ * found locally need be downloaded.
+ *
+ * The sidecar is binary: a magic number, the ETag and size of the object it describes, the
+ * block size, and then the weak checksum and MD5 digest of each block. The block size must be
+ * between {@link #MIN_BLOCK_SIZE} and {@link #MAX_BLOCK_SIZE}.
+ *
+ * @author jdolan
+ */
+public class S3Blocks {
+
+	/**
+	 * The key suffix of block checksum sidecars.
+	 */
+	public static final String SUFFIX = ".blocks";
+
+	/**
+	 * The sidecar format identifier and version.
+	 */
+	private static final int MAGIC = 0x51494231;
+
+	/**
+	 * The smallest block size accepted from a sidecar.
+	 */
+	public static final int MIN_BLOCK_SIZE = 1024;
+
+	/**
+	 * The largest block size accepted from a sidecar.
+	 */
+	public static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The number of tags into which blocks are partitioned by their weak checksum.
+	 */
+	private static final int TAGS = 1 << 16;
+
+	/**
+	 * The size of the buffer through which local files are scanned.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String etag;
+	private final long size;
+	private final int blockSize;
+	private final int[] weak;
+	private final byte[][] strong;
+
+	/**
+	 * Instantiates {@link S3Blocks} by reading a sidecar. The header is validated before any
+	 * checksums are allocated, so that a malformed sidecar can not exhaust memory.
+	 *
+	 * @param inputStream The sidecar.
+	 * @param expectedSize The size of the object the sidecar is expected to describe.
+	 * @throws IOException If an error occurs, or the sidecar is malformed or describes an
+	 * object of a different size.
+	 */
+	public S3Blocks(final InputStream inputStream, final long expectedSize) throws IOException {
+
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Unsupported block checksums");
+		}
+
+		etag = in.readUTF();
+		size = in.readLong();
+		blockSize = in.readInt();
+
+		if (size < 0) {
+			throw new IOException("Malformed block checksums");
+		}
+
+		if (size != expectedSize) {
+			throw new IOException("Block checksums of " + size + " bytes, expected " + expectedSize);
+		}
+
+		if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+			throw new IOException("Unsupported block size " + blockSize);
+		}
+
+		final long blocks = size / blockSize + (size % blockSize == 0 ? 0 : 1);
+		if (blocks > Integer.MAX_VALUE) {
+			throw new IOException("Too many blocks, " + blocks);
+		}
+
+		final int count = (int) blocks;
+
+		weak = new int[count];
+		strong = new byte[count][];
+
+		for (int i = 0; i < count; i++) {
+			weak[i] = in.readInt();
+			strong[i] = new byte[16];
+			in.readFully(strong[i]);
+		}
+	}
+
+	/**
+	 * Instantiates {@link S3Blocks} by digesting the given File, for publishing.
+	 *
+	 * @param file The File.
+	 * @param etag The ETag of the object uploaded from the File.
+	 * @param blockSize The block size.
+	 * @throws IOException If an error occurs.
+	 */
+	public S3Blocks(final File file, final String etag, final int blockSize) throws IOException {
+
+		this.etag = etag;
+		this.size = file.length();
+		this.blockSize = blockSize;
+
+		final int count = (int) ((size + blockSize - 1) / blockSize);
+
+		weak = new int[count];
+		strong = new byte[count][];
+
+		try (InputStream in = Files.newInputStream(file.toPath())) {
+			final byte[] block = new byte[blockSize];
+			for (int i = 0; i < count; i++) {
+				final int length = (int) Math.min(blockSize, size - (long) i * blockSize);
+				IOUtils.readFully(in, block, 0, length);
+				weak[i] = weak(block, 0, length);
+				strong[i] = DigestUtils.md5(Arrays.copyOf(block, length));
+			}
+		}
+	}
+
+	/**
+	 * Writes the sidecar.
+	 *
+	 * @param outputStream The OutputStream.
+	 * @throws IOException If an error occurs.
+	 */
+	public void write(final OutputStream outputStream) throws IOException {
+
+		final DataOutputStream out = new DataOutputStream(outputStream);
+
+		out.writeInt(MAGIC);
+		out.writeUTF(etag);
+		out.writeLong(size);
+		out.writeInt(blockSize);
+
+		for (int i = 0; i < weak.length; i++) {
+			out.writeInt(weak[i]);
+			out.write(strong[i]);
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * Calculates the weak checksum of the given bytes. This is the rolling checksum of rsync:
+	 * the low half is the sum of the bytes, and the high half the sum of those sums.
+	 *
+	 * @param bytes The bytes.
+	 * @param offset The offset of the first byte.
+	 * @param length The number of bytes.
+	 * @return The weak checksum.
+	 */
+	public static int weak(final byte[] bytes, final int offset, final int length) {
+
+		int a = 0, b = 0;
+		for (int i = 0; i < length; i++) {
+			final int x = bytes[offset + i] & 0xff;
+			a += x;
+			b += (length - i) * x;
+		}
+
+		return (a & 0xffff) | (b << 16);
+	}
+
+	/**
+	 * @param weak A weak checksum.
+	 * @return The 16 bit tag of the weak checksum, the sum of its halves, as in rsync.
+	 */
+	private static int tag(final int weak) {
+		return ((weak & 0xffff) + (weak >>> 16)) & 0xffff;
+	}
+
+	/**
+	 * Scans the given File for the full blocks described by this sidecar, at any offset.
+	 * The weak checksum is rolled through the File a byte at a time, and the strong digest is
+	 * only calculated where the weak checksum matches. As in rsync, blocks are sorted by the
+	 * tag of their weak checksum, so that most offsets are dismissed by a single lookup in the
+	 * tag table, without allocating. A trailing partial block is never matched, and must always
+	 * be downloaded.
+	 *
+	 * @param file The local File.
+	 * @return The offset within `file` of each block, or -1 for blocks not found.
+	 * @throws IOException If an error occurs.
+	 */
+	public long[] match(final File file) throws IOException {
+
+		final long[] offsets = new long[weak.length];
+		Arrays.fill(offsets, -1L);
+
+		final int full = (int) (size / blockSize);
+		if (full == 0 || file.length() < blockSize) {
+			return offsets;
+		}
+
+		final int[] tags = new int[TAGS + 1];
+		for (int i = 0; i < full; i++) {
+			tags[tag(weak[i]) + 1]++;
+		}
+
+		for (int tag = 0; tag < TAGS; tag++) {
+			tags[tag + 1] += tags[tag];
+		}
+
+		final int[] blocks = new int[full];
+		final int[] cursors = Arrays.copyOf(tags, TAGS);
+		for (int i = 0; i < full; i++) {
+			blocks[cursors[tag(weak[i])]++] = i;
+		}
+
+		final MessageDigest md5 = DigestUtils.getMd5Digest();
+		final byte[] window = new byte[blockSize];
+
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE)) {
+
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int available = 0, index = 0;
+
+			IOUtils.readFully(in, window);
+
+			int head = 0, a = 0, b = 0;
+			for (int i = 0; i < blockSize; i++) {
+				a += window[i] & 0xff;
+				b += (blockSize - i) * (window[i] & 0xff);
+			}
+
+			long position = 0;
+			while (true) {
+
+				final int checksum = (a & 0xffff) | (b << 16);
+				final int tag = tag(checksum);
+
+				if (tags[tag] < tags[tag + 1]) {
+
+					byte[] digest = null;
+					boolean matched = false;
+
+					for (int j = tags[tag]; j < tags[tag + 1]; j++) {
+						final int i = blocks[j];
+						if (weak[i] != checksum) {
+							continue;
+						}
+
+						if (digest == null) {
+							md5.update(window, head, blockSize - head);
+							md5.update(window, 0, head);
+							digest = md5.digest();
+						}
+
+						if (Arrays.equals(strong[i], digest)) {
+							if (offsets[i] < 0) {
+								offsets[i] = position;
+							}
+							matched = true;
+						}
+					}
+
+					if (matched) {
+						final int remaining = available - index;
+						if (remaining > 0) {
+							final int count = Math.min(remaining, blockSize);
+							System.arraycopy(buffer, index, window, 0, count);
+							index += count;
+							if (count < blockSize && IOUtils.read(in, window, count, blockSize - count) < blockSize - count) {
+								break;
+							}
+						} else if (IOUtils.read(in, window) < blockSize) {
+							break;
+						}
+
+						head = 0;
+						a = b = 0;
+						for (int i = 0; i < blockSize; i++) {
+							a += window[i] & 0xff;
+							b += (blockSize - i) * (window[i] & 0xff);
+						}
+
+						position += blockSize;
+						continue;
+					}
+				}
+
+				if (index == available) {
+					available = in.read(buffer);
+					index = 0;
+					if (available < 0) {
+						break;
+					}
+				}
+
+				final int out = window[head] & 0xff;
+				final int next = buffer[index++] & 0xff;
+
+				window[head] = (byte) next;
+				head = head + 1 == blockSize ? 0 : head + 1;
+
+				a += next - out;
+				b += a - blockSize * out;
+
+				position++;
+			}
+		}
+
+		return offsets;
+	}
+
+	/**
+	 * @return The ETag of the object these checksums describe.
+	 */
+	public String getEtag() {
+		return etag;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * @return The number of blocks, including any trailing partial block.
+	 */
+	public int getBlockCount() {
+		return weak.length;
+	}
+}
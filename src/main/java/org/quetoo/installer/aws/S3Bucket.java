@@ -3,15 +3,28 @@ package org.quetoo.installer.aws;
 import static org.quetoo.installer.aws.S3.getChildNodes;
 import static org.quetoo.installer.aws.S3.getString;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang3.ObjectUtils;
 import org.quetoo.installer.Asset;
 import org.quetoo.installer.Index;
 import org.quetoo.installer.Sync;
 import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 
 /**
  * An abstraction for the parsed XML contents of an AWS S3 bucket.
@@ -22,10 +35,21 @@ public class S3Bucket implements Index {
 
 	private static final String NAME = "Name";
 	private static final String CONTENTS = "Contents";
+	private static final String IS_TRUNCATED = "IsTruncated";
+	private static final String NEXT_CONTINUATION_TOKEN = "NextContinuationToken";
+	private static final String NEXT_MARKER = "NextMarker";
+	private static final String KEY = "Key";
+	private static final String COMMON_PREFIXES = "CommonPrefixes";
+	private static final String PREFIX = "Prefix";
 
 	private final S3Sync sync;
 	private final String name;
 	private final List<S3Object> objects;
+	private final Map<String, S3Object> blocks;
+	private final boolean truncated;
+	private final String nextContinuationToken;
+	private final String marker;
+	private final List<String> commonPrefixes;
 
 	/**
 	 * Instantiates a new {@link S3Bucket} from the given XML document.
@@ -38,9 +62,137 @@ public class S3Bucket implements Index {
 
 		name = getString(doc.getDocumentElement(), NAME);
 
-		objects = getChildNodes(doc.getDocumentElement(), CONTENTS)
+		objects = new ArrayList<>();
+		blocks = new HashMap<>();
+
+		getChildNodes(doc.getDocumentElement(), CONTENTS)
 				.map(node -> new S3Object(this, node))
+				.forEach(this::add);
+
+		truncated = getChildNodes(doc.getDocumentElement(), IS_TRUNCATED)
+				.anyMatch(node -> Boolean.parseBoolean(node.getTextContent()));
+
+		nextContinuationToken = getChildNodes(doc.getDocumentElement(), NEXT_CONTINUATION_TOKEN)
+				.map(Node::getTextContent)
+				.findFirst()
+				.orElse(null);
+
+		commonPrefixes = getChildNodes(doc.getDocumentElement(), COMMON_PREFIXES)
+				.map(node -> getString(node, PREFIX))
+				.collect(Collectors.toList());
+
+		marker = getChildNodes(doc.getDocumentElement(), NEXT_MARKER)
+				.map(Node::getTextContent)
+				.findFirst()
+				.orElseGet(() -> Stream.concat(getChildNodes(doc.getDocumentElement(), CONTENTS)
+						.map(node -> getString(node, KEY)), commonPrefixes.stream())
+						.max(Comparator.naturalOrder())
+						.orElse(null));
+	}
+
+	/**
+	 * Instantiates a new {@link S3Bucket} by streaming the given XML listing. No DOM is built;
+	 * {@link S3Object}s are created as their `Contents` elements are read.
+	 * 
+	 * @param sync The {@link S3Sync}.
+	 * @param inputStream An S3 bucket listing (e.g. `http://quetoo.s3.amazonaws.com/`).
+	 * @throws IOException If an error occurs.
+	 */
+	public S3Bucket(final S3Sync sync, final InputStream inputStream) throws IOException {
+		this.sync = sync;
+
+		String name = null, nextContinuationToken = null, nextMarker = null, last = null;
+		boolean truncated = false;
+		objects = new ArrayList<>();
+		blocks = new HashMap<>();
+		commonPrefixes = new ArrayList<>();
+
+		final XMLStreamReader reader = S3.getXMLStreamReader(inputStream);
+		try {
+			while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				switch (reader.getLocalName()) {
+					case NAME:
+						name = reader.getElementText();
+						break;
+					case CONTENTS:
+						final S3Object obj = new S3Object(this, reader);
+						last = ObjectUtils.max(last, obj.getKey());
+						add(obj);
+						break;
+					case IS_TRUNCATED:
+						truncated = Boolean.parseBoolean(reader.getElementText());
+						break;
+					case NEXT_CONTINUATION_TOKEN:
+						nextContinuationToken = reader.getElementText();
+						break;
+					case NEXT_MARKER:
+						nextMarker = reader.getElementText();
+						break;
+					case COMMON_PREFIXES:
+						while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+							if (PREFIX.equals(reader.getLocalName())) {
+								final String commonPrefix = reader.getElementText();
+								last = ObjectUtils.max(last, commonPrefix);
+								commonPrefixes.add(commonPrefix);
+							} else {
+								S3.skipElement(reader);
+							}
+						}
+						break;
+					default:
+						S3.skipElement(reader);
+						break;
+				}
+			}
+			reader.close();
+		} catch (XMLStreamException xmlse) {
+			throw new IOException(xmlse);
+		}
+
+		this.name = name;
+		this.truncated = truncated;
+		this.nextContinuationToken = nextContinuationToken;
+		this.marker = nextMarker != null ? nextMarker : last;
+	}
+
+	/**
+	 * Instantiates a new {@link S3Bucket} as a view of a page of a listing fetched by another
+	 * {@link S3Sync} of the same bucket. The accepted objects are copied, and belong to the
+	 * new {@link S3Bucket}, so that they are synchronized by the given {@link S3Sync}.
+	 * 
+	 * @param sync The {@link S3Sync}.
+	 * @param bucket The page of the listing.
+	 * @param predicate The predicate accepting objects of interest to `sync`.
+	 */
+	public S3Bucket(final S3Sync sync, final S3Bucket bucket, final Predicate<S3Object> predicate) {
+		this.sync = sync;
+
+		name = bucket.getName();
+
+		objects = bucket.getObjects().stream()
+				.filter(predicate)
+				.map(obj -> new S3Object(this, obj.getKey(), obj.getEtag(), obj.getSize()))
 				.collect(Collectors.toList());
+
+		blocks = new HashMap<>(bucket.getBlocks());
+		truncated = bucket.isTruncated();
+		nextContinuationToken = bucket.getNextContinuationToken();
+		marker = bucket.getMarker();
+		commonPrefixes = bucket.getCommonPrefixes();
+	}
+
+	/**
+	 * Adds the given {@link S3Object} to this bucket. Block checksum sidecars are retained
+	 * separately, as they describe other objects rather than being synchronized themselves.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 */
+	private void add(final S3Object obj) {
+		if (obj.getKey().endsWith(S3Blocks.SUFFIX)) {
+			blocks.put(obj.getKey(), obj);
+		} else {
+			objects.add(obj);
+		}
 	}
 
 	/**
@@ -80,8 +232,38 @@ public class S3Bucket implements Index {
 	public List<S3Object> getObjects() {
 		return objects;
 	}
+
+	/**
+	 * @return The block checksum sidecars in this page of the listing, by key.
+	 */
+	public Map<String, S3Object> getBlocks() {
+		return blocks;
+	}
 	
+	/**
+	 * @return True if the listing continues beyond this page.
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public String getNextContinuationToken() {
+		return nextContinuationToken;
+	}
+
+	/**
+	 * @return The key prefixes rolled up by the delimiter, if one was specified.
+	 */
+	public List<String> getCommonPrefixes() {
+		return commonPrefixes;
+	}
+
+	/**
+	 * @return The key after which the listing continues, for servers that page by marker
+	 * rather than by continuation token, or null if this page is empty. This is the last key
+	 * or common prefix of the page, regardless of any filtering.
+	 */
 	public String getMarker() {
-		return objects.get(objects.size() - 1).getKey();
+		return marker;
 	}
 }
@@ -0,0 +1,239 @@
+package org.quetoo.installer.aws;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Executes idempotent requests against S3. Requests whose response takes longer than the
+ * configured percentile of recently observed latencies are hedged: a duplicate request is
+ * issued, and whichever responds first is used.
+ *
+ * Latencies are measured from the time the request is sent on its leased connection, as recorded
+ * by {@link S3RequestExecutor}. Time spent waiting for a pooled connection neither inflates the
+ * samples nor triggers a hedge, so that hedges are not issued only to queue for the same
+ * saturated pool. HTTP clients which do not record it are never hedged.
+ *
+ * @author jdolan
+ */
+public class S3Client {
+
+	/**
+	 * The number of recent latencies from which the hedging threshold is derived.
+	 */
+	private static final int SAMPLES = 256;
+
+	/**
+	 * The number of latencies that must be observed before requests are hedged.
+	 */
+	private static final int MIN_SAMPLES = 20;
+
+	/**
+	 * The minimum hedging threshold, in nanoseconds, so that fast local endpoints are not hedged.
+	 */
+	private static final long MIN_THRESHOLD = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private static final Executor executor = runnable -> Schedulers.io().scheduleDirect(runnable);
+
+	private final CloseableHttpClient httpClient;
+	private final double hedge;
+
+	private final long[] latencies = new long[SAMPLES];
+	private int latencyCount;
+
+	private volatile boolean stamped;
+
+	/**
+	 * Instantiates an {@link S3Client}.
+	 *
+	 * @param httpClient The HTTP client.
+	 * @param hedge The latency percentile (e.g. `0.95`) beyond which requests are hedged, or 0
+	 * to disable hedging.
+	 */
+	public S3Client(final CloseableHttpClient httpClient, final double hedge) {
+		this.httpClient = httpClient;
+		this.hedge = hedge;
+	}
+
+	/**
+	 * Records the time taken to receive a response.
+	 *
+	 * @param nanos The latency, in nanoseconds.
+	 */
+	private synchronized void record(final long nanos) {
+		latencies[latencyCount++ % SAMPLES] = nanos;
+	}
+
+	/**
+	 * @return The hedging threshold in nanoseconds, or -1 if requests should not be hedged.
+	 */
+	private synchronized long threshold() {
+
+		if (hedge <= 0 || !stamped || latencyCount < MIN_SAMPLES) {
+			return -1;
+		}
+
+		final long[] samples = Arrays.copyOf(latencies, Math.min(latencyCount, SAMPLES));
+		Arrays.sort(samples);
+
+		return Math.max(MIN_THRESHOLD, samples[(int) Math.min(samples.length - 1, Math.floor(hedge * samples.length))]);
+	}
+
+	/**
+	 * @param context The HttpContext of a request.
+	 * @return The time, in nanoseconds, at which the request was sent, or null if it has not
+	 * been sent, or the HTTP client does not record it.
+	 */
+	private Long sent(final HttpContext context) {
+		final Long sent = (Long) context.getAttribute(S3RequestExecutor.SENT);
+		if (sent != null) {
+			stamped = true;
+		}
+		return sent;
+	}
+
+	/**
+	 * Executes the given request, recording its latency.
+	 *
+	 * @param request The request.
+	 * @param context The HttpContext.
+	 * @return The response.
+	 * @throws IOException If an error occurs.
+	 */
+	private CloseableHttpResponse timed(final HttpGet request, final HttpContext context) throws IOException {
+		final long start = System.nanoTime();
+		final CloseableHttpResponse res = httpClient.execute(request, context);
+		final Long sent = sent(context);
+		record(System.nanoTime() - (sent != null ? sent : start));
+		return res;
+	}
+
+	/**
+	 * Releases the given request, and its response, should it have produced one.
+	 *
+	 * @param request The request.
+	 * @param response The pending response.
+	 */
+	private static void abandon(final HttpGet request, final Future<CloseableHttpResponse> response) {
+
+		request.abort();
+
+		executor.execute(() -> {
+			try {
+				response.get().close();
+			} catch (InterruptedException | ExecutionException | IOException e) {
+				// the request was aborted, or failed on its own
+			}
+		});
+	}
+
+	/**
+	 * Executes the given request, and its duplicate if it exceeds `threshold` once sent. While the
+	 * request waits for a pooled connection, it is not hedged.
+	 *
+	 * @param request The request.
+	 * @param threshold The hedging threshold, in nanoseconds.
+	 * @return The first response received.
+	 * @throws IOException If both requests fail.
+	 */
+	private CloseableHttpResponse hedged(final HttpGet request, final long threshold) throws IOException {
+
+		final HttpGet duplicate = new HttpGet(request.getURI());
+		duplicate.setHeaders(request.getAllHeaders());
+
+		final CompletionService<CloseableHttpResponse> responses = new ExecutorCompletionService<>(executor);
+
+		final HttpContext context = new BasicHttpContext();
+
+		final Future<CloseableHttpResponse> primary = responses.submit(() -> timed(request, context));
+		Future<CloseableHttpResponse> secondary = null;
+
+		try {
+			Future<CloseableHttpResponse> first = null;
+			while (first == null) {
+				final Long sent = sent(context);
+				if (sent == null) {
+					first = responses.poll(MIN_THRESHOLD, TimeUnit.NANOSECONDS);
+					continue;
+				}
+
+				final long remaining = threshold - (System.nanoTime() - sent);
+				if (remaining > 0) {
+					first = responses.poll(remaining, TimeUnit.NANOSECONDS);
+				} else {
+					secondary = responses.submit(() -> timed(duplicate, new BasicHttpContext()));
+					first = responses.take();
+				}
+			}
+
+			try {
+				final CloseableHttpResponse res = first.get();
+				if (secondary != null) {
+					if (first == primary) {
+						abandon(duplicate, secondary);
+					} else {
+						abandon(request, primary);
+					}
+				}
+				return res;
+			} catch (ExecutionException ee) {
+				if (secondary == null) {
+					throw ee;
+				}
+				return responses.take().get();
+			}
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof IOException) {
+				throw (IOException) ee.getCause();
+			}
+			throw new IOException(ee.getCause());
+		} catch (InterruptedException ie) {
+			abandon(request, primary);
+			if (secondary != null) {
+				abandon(duplicate, secondary);
+			}
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Executes the given request, hedging it if it is slow to respond. The response entity is
+	 * consumed after `handler` returns, so that the connection may be reused.
+	 *
+	 * @param request The request.
+	 * @param handler The response handler.
+	 * @return The handled response.
+	 * @throws IOException If an error occurs.
+	 */
+	public <T> T execute(final HttpGet request, final ResponseHandler<? extends T> handler) throws IOException {
+
+		final long threshold = threshold();
+
+		try (CloseableHttpResponse res = threshold < 0 ? timed(request, new BasicHttpContext()) : hedged(request, threshold)) {
+			final T result = handler.handleResponse(res);
+			EntityUtils.consume(res.getEntity());
+			return result;
+		}
+	}
+
+	public CloseableHttpClient getHttpClient() {
+		return httpClient;
+	}
+}
@@ -3,6 +3,11 @@ package org.quetoo.installer.aws;
 import static org.quetoo.installer.aws.S3.getLong;
 import static org.quetoo.installer.aws.S3.getString;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang3.StringUtils;
 import org.quetoo.installer.Asset;
 import org.quetoo.installer.Index;
 import org.w3c.dom.Node;
@@ -37,6 +42,61 @@ public class S3Object implements Asset {
 		size = getLong(node, SIZE);
 	}
 
+	/**
+	 * Instantiates an S3Object from the given XML stream.
+	 * 
+	 * @param bucket The bucket containing this object.
+	 * @param reader An XMLStreamReader positioned on a `Contents` element of an S3 bucket
+	 * listing. The reader is advanced to the end of that element.
+	 * @throws XMLStreamException If an error occurs.
+	 */
+	public S3Object(final S3Bucket bucket, final XMLStreamReader reader) throws XMLStreamException {
+		this.bucket = bucket;
+
+		String key = null, etag = null;
+		long size = 0;
+
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (reader.getLocalName()) {
+				case KEY:
+					key = reader.getElementText();
+					break;
+				case ETAG:
+					etag = StringUtils.remove(reader.getElementText(), '"');
+					break;
+				case SIZE:
+					try {
+						size = Long.parseLong(reader.getElementText());
+					} catch (NumberFormatException nfe) {
+						size = 0L;
+					}
+					break;
+				default:
+					S3.skipElement(reader);
+					break;
+			}
+		}
+
+		this.key = key;
+		this.etag = etag;
+		this.size = size;
+	}
+
+	/**
+	 * Instantiates an S3Object with the given attributes.
+	 * 
+	 * @param bucket The bucket containing this object.
+	 * @param key The object key.
+	 * @param etag The object ETag, with or without its surrounding quotes.
+	 * @param size The object size in bytes.
+	 */
+	public S3Object(final S3Bucket bucket, final String key, final String etag, final long size) {
+		this.bucket = bucket;
+		this.key = key;
+		this.etag = StringUtils.remove(etag, '"');
+		this.size = size;
+	}
+
 	@Override
 	public Index getIndex() {
 		return getBucket();
@@ -70,6 +130,7 @@ public class S3Object implements Asset {
 		return key;
 	}
 
+	@Override
 	public String getEtag() {
 		return etag;
 	}
@@ -77,4 +138,26 @@ public class S3Object implements Asset {
 	public long getSize() {
 		return size;
 	}
+
+	/**
+	 * @return True if this object was uploaded in multiple parts (its ETag is `md5-N`).
+	 */
+	public boolean isMultipart() {
+		return getParts() > 0;
+	}
+
+	/**
+	 * @return The number of parts this object was uploaded in, or 0 for simple uploads.
+	 */
+	public int getParts() {
+		final int dash = etag.lastIndexOf('-');
+		if (dash == -1) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(etag.substring(dash + 1));
+		} catch (NumberFormatException nfe) {
+			return 0;
+		}
+	}
 }
@@ -0,0 +1,23 @@
+package org.quetoo.installer.aws;
+
+import java.io.IOException;
+
+/**
+ * A failure which retrying will not resolve, such as a response that contradicts the listing,
+ * or a destination without room for the download.
+ *
+ * @author jdolan
+ */
+public class S3PermanentException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Instantiates an {@link S3PermanentException}.
+	 *
+	 * @param message The detail message.
+	 */
+	public S3PermanentException(final String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,32 @@
+package org.quetoo.installer.aws;
+
+import java.io.IOException;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * An HttpRequestExecutor recording the time at which each request is sent on its leased
+ * connection, so that {@link S3Client} may measure latency without the time spent waiting for
+ * a pooled connection.
+ *
+ * @author jdolan
+ */
+public class S3RequestExecutor extends HttpRequestExecutor {
+
+	/**
+	 * The context attribute holding the time, in nanoseconds, at which the request was sent.
+	 */
+	public static final String SENT = "quetoo.installer.sent";
+
+	@Override
+	public HttpResponse execute(final HttpRequest request, final HttpClientConnection conn, final HttpContext context)
+			throws IOException, HttpException {
+		context.setAttribute(SENT, System.nanoTime());
+		return super.execute(request, conn, context);
+	}
+}
@@ -1,30 +1,72 @@
 package org.quetoo.installer.aws;
 
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.execchain.RequestAbortedException;
 import org.quetoo.installer.Asset;
+import org.quetoo.installer.AtomicFiles;
+import org.quetoo.installer.ContentStore;
 import org.quetoo.installer.Delta;
+import org.quetoo.installer.DigestCache;
 import org.quetoo.installer.Index;
+import org.quetoo.installer.Manifest;
+import org.quetoo.installer.RateLimiter;
 import org.quetoo.installer.Sync;
 
+import io.reactivex.Maybe;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
 
 /**
  * Synchronizes a local file system destination with an S3 bucket.
@@ -40,9 +82,26 @@ public class S3Sync implements Sync {
 
 		private CloseableHttpClient httpClient;
 		private String bucketName;
+		private URI endpoint;
+		private String prefix;
+		private String delimiter;
 		private Predicate<S3Object> predicate;
 		private Function<S3Object, File> mapper;
 		private File destination;
+		private int concurrency = 1;
+		private DigestCache digestCache;
+		private int parallelism = Runtime.getRuntime().availableProcessors();
+		private ExecutorService deltaExecutor;
+		private long partSize;
+		private RateLimiter rateLimiter;
+		private int prewarm;
+		private int retries = 3;
+		private double hedge;
+		private Manifest manifest;
+		private ContentStore contentStore;
+		private long rangeThreshold = 64 * 1024 * 1024;
+		private long rangeSize = 8 * 1024 * 1024;
+		private int rangeParallelism = 4;
 
 		public Builder withHttpClient(final CloseableHttpClient httpClient) {
 			this.httpClient = httpClient;
@@ -54,6 +113,21 @@ public class S3Sync implements Sync {
 			return this;
 		}
 
+		public Builder withEndpoint(final URI endpoint) {
+			this.endpoint = endpoint;
+			return this;
+		}
+
+		public Builder withPrefix(final String prefix) {
+			this.prefix = prefix;
+			return this;
+		}
+
+		public Builder withDelimiter(final String delimiter) {
+			this.delimiter = delimiter;
+			return this;
+		}
+
 		public Builder withPredicate(final Predicate<S3Object> predicate) {
 			this.predicate = predicate;
 			return this;
@@ -74,16 +148,137 @@ public class S3Sync implements Sync {
 			return this;
 		}
 
+		public Builder withConcurrency(final int concurrency) {
+			this.concurrency = concurrency;
+			return this;
+		}
+
+		public Builder withDigestCache(final DigestCache digestCache) {
+			this.digestCache = digestCache;
+			return this;
+		}
+
+		public Builder withParallelism(final int parallelism) {
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		public Builder withDeltaExecutor(final ExecutorService deltaExecutor) {
+			this.deltaExecutor = deltaExecutor;
+			return this;
+		}
+
+		public Builder withPartSize(final long partSize) {
+			this.partSize = partSize;
+			return this;
+		}
+
+		public Builder withRateLimiter(final RateLimiter rateLimiter) {
+			this.rateLimiter = rateLimiter;
+			return this;
+		}
+
+		public Builder withPrewarm(final int prewarm) {
+			this.prewarm = prewarm;
+			return this;
+		}
+
+		public Builder withRetries(final int retries) {
+			this.retries = retries;
+			return this;
+		}
+
+		public Builder withHedging(final double percentile) {
+			this.hedge = percentile;
+			return this;
+		}
+
+		public Builder withManifest(final Manifest manifest) {
+			this.manifest = manifest;
+			return this;
+		}
+
+		public Builder withContentStore(final ContentStore contentStore) {
+			this.contentStore = contentStore;
+			return this;
+		}
+
+		public Builder withRangeThreshold(final long rangeThreshold) {
+			this.rangeThreshold = rangeThreshold;
+			return this;
+		}
+
+		public Builder withRangeSize(final long rangeSize) {
+			this.rangeSize = rangeSize;
+			return this;
+		}
+
+		public Builder withRangeParallelism(final int rangeParallelism) {
+			this.rangeParallelism = rangeParallelism;
+			return this;
+		}
+
 		public S3Sync build() {
 			return new S3Sync(this);
 		}
 	}
 
+	/**
+	 * The file name suffix of partial downloads.
+	 */
+	private static final String PART = ".part";
+
+	/**
+	 * The file name suffix of files being rebuilt from their block checksums.
+	 */
+	private static final String DELTA = ".delta";
+
+	/**
+	 * The file name suffix of range journals, recording how much of a partial file written in
+	 * parallel ranges is contiguous.
+	 */
+	private static final String RANGES = ".ranges";
+
+	/**
+	 * The maximum number of bytes to transfer per FileChannel call.
+	 */
+	private static final long TRANSFER_SIZE = 1024 * 1024;
+
+	/**
+	 * The base and maximum delays, in milliseconds, between retries.
+	 */
+	private static final long RETRY_DELAY = 250, MAX_RETRY_DELAY = 10000;
+
+	/**
+	 * The size of the buffer through which ranges are written to their position in the file.
+	 */
+	private static final int RANGE_BUFFER_SIZE = 64 * 1024;
+
 	private final CloseableHttpClient httpClient;
+	private final S3Client client;
 	private final String bucketName;
+	private final URI endpoint;
+	private final String prefix;
+	private final String delimiter;
 	private final Predicate<S3Object> predicate;
 	private final Function<S3Object, File> mapper;
 	private final File destination;
+	private final int concurrency;
+	private final DigestCache digestCache;
+	private final int parallelism;
+	private final ExecutorService deltaExecutor;
+	private final boolean ownsDeltaExecutor;
+	private final Scheduler deltaScheduler;
+	private final long partSize;
+	private final RateLimiter rateLimiter;
+	private final int prewarm;
+	private final int retries;
+	private final Manifest manifest;
+	private final ContentStore contentStore;
+	private final long rangeThreshold;
+	private final long rangeSize;
+	private final int rangeParallelism;
+	private final Map<String, S3Object> blocks = new ConcurrentHashMap<>();
 
 	/**
 	 * Instantiates an {@link S3Sync} with the given Builder.
@@ -94,9 +289,40 @@ public class S3Sync implements Sync {
 
 		httpClient = builder.httpClient;
 		bucketName = builder.bucketName;
+		endpoint = builder.endpoint;
+		prefix = builder.prefix;
+		delimiter = builder.delimiter;
 		predicate = builder.predicate;
 		mapper = builder.mapper;
 		destination = builder.destination;
+		concurrency = Math.max(builder.concurrency, 1);
+		digestCache = builder.digestCache;
+		parallelism = Math.max(builder.parallelism, 1);
+
+		if (builder.deltaExecutor != null) {
+			deltaExecutor = builder.deltaExecutor;
+			ownsDeltaExecutor = false;
+		} else {
+			final AtomicInteger threads = new AtomicInteger();
+			deltaExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+				final Thread thread = new Thread(runnable, bucketName + "-delta-" + threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			ownsDeltaExecutor = true;
+		}
+
+		deltaScheduler = Schedulers.from(deltaExecutor);
+		partSize = builder.partSize;
+		rateLimiter = builder.rateLimiter;
+		prewarm = builder.prewarm;
+		retries = Math.max(builder.retries, 0);
+		client = new S3Client(httpClient, builder.hedge);
+		manifest = builder.manifest;
+		contentStore = builder.contentStore;
+		rangeThreshold = builder.rangeThreshold;
+		rangeSize = Math.max(builder.rangeSize, 1);
+		rangeParallelism = Math.max(builder.rangeParallelism, 1);
 	}
 
 	/**
@@ -110,10 +336,171 @@ public class S3Sync implements Sync {
 	}
 
 	/**
-	 * Executes an HTTP GET request for the specified path.
+	 * Resolves the URI of the specified path. Requests are addressed to the bucket's virtual
+	 * host on S3, or if an endpoint is configured, to the bucket's path on that endpoint.
+	 * 
+	 * @param path   The path.
+	 * @param params The query parameters.
+	 * @return The URI.
+	 * @throws IOException If an error occurs.
+	 */
+	private URI uri(final String path, final Map<String, String> params) throws IOException {
+
+		final URIBuilder uri;
+		if (endpoint != null) {
+			uri = new URIBuilder(endpoint)
+					.setPath(StringUtils.removeEnd(endpoint.getPath(), "/") + "/" + bucketName + "/" + path);
+		} else {
+			uri = new URIBuilder()
+					.setScheme("https")
+					.setHost(bucketName + ".s3.amazonaws.com/")
+					.setPath(path);
+		}
+
+		params.forEach((param, value) -> uri.setParameter(param, value));
+
+		try {
+			return uri.build();
+		} catch (URISyntaxException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Creates an HTTP GET request for the specified path.
+	 * 
+	 * @param path   The path.
+	 * @param params The query parameters.
+	 * @return The request.
+	 * @throws IOException If an error occurs.
+	 */
+	private HttpGet newHttpGet(final String path, final Map<String, String> params) throws IOException {
+		return new HttpGet(uri(path, params));
+	}
+
+	/**
+	 * Opens the configured number of pooled connections in the background, by way of
+	 * concurrent HEAD requests for the bucket. They are then kept alive for the downloads that
+	 * follow the listing, which would otherwise each pay for a TLS handshake.
+	 */
+	private void prewarm() {
+		for (int i = 0; i < prewarm; i++) {
+			Schedulers.io().scheduleDirect(() -> {
+				try {
+					httpClient.execute(new HttpHead(uri("", Collections.emptyMap())), res -> null);
+				} catch (IOException ioe) {
+					// the connection will be opened on demand instead
+				}
+			});
+		}
+	}
+
+	/**
+	 * An idempotent request, which may be retried.
+	 * 
+	 * @param <T> The result type.
+	 */
+	private interface Request<T> {
+		T execute() throws IOException;
+	}
+
+	/**
+	 * Requests aborted by hedging or cancellation, and failures of an interrupted thread, are
+	 * interruptions. Timeouts, including connect and connection pool timeouts, are also
+	 * InterruptedIOExceptions, but are not interruptions.
+	 * 
+	 * @param ioe The failure.
+	 * @return True if `ioe` was caused by an interruption.
+	 */
+	private static boolean isInterruption(final IOException ioe) {
+		return Thread.currentThread().isInterrupted()
+				|| ioe instanceof RequestAbortedException
+				|| ioe.getClass() == InterruptedIOException.class;
+	}
+
+	/**
+	 * @param ioe The failure.
+	 * @return True if the request that failed with `ioe` may succeed if retried. Local file
+	 * system failures, such as a denied or missing path, are not retried.
+	 */
+	private static boolean isRetryable(final IOException ioe) {
+
+		if (isInterruption(ioe) || ioe instanceof S3PermanentException || ioe instanceof FileSystemException) {
+			return false;
+		}
+
+		if (ioe instanceof HttpResponseException) {
+			final int status = ((HttpResponseException) ioe).getStatusCode();
+			return status >= 500 || status == HttpStatus.SC_REQUEST_TIMEOUT || status == 429;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Executes the given request, retrying transient failures with exponential backoff and
+	 * full jitter, so that concurrent retries do not arrive in lockstep.
+	 * 
+	 * @param request The request.
+	 * @return The result of the request.
+	 * @throws IOException If the request fails, and retries are exhausted.
+	 */
+	private <T> T retry(final Request<T> request) throws IOException {
+
+		for (int attempt = 0;; attempt++) {
+			try {
+				return request.execute();
+			} catch (IOException ioe) {
+				if (attempt >= retries || !isRetryable(ioe)) {
+					throw ioe;
+				}
+
+				final long delay = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << Math.min(attempt, 16));
+				try {
+					Thread.sleep(ThreadLocalRandom.current().nextLong(delay + 1));
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wraps the given entity so that it is decompressed as it is read, according to its
+	 * Content-Encoding.
+	 * 
+	 * @param entity The response entity.
+	 * @return The decoded entity.
+	 * @throws IOException If the Content-Encoding is not supported.
+	 */
+	private static HttpEntity decode(final HttpEntity entity) throws IOException {
+
+		final Header encoding = entity.getContentEncoding();
+		if (encoding == null) {
+			return entity;
+		}
+
+		switch (StringUtils.lowerCase(StringUtils.trim(encoding.getValue()))) {
+			case "gzip":
+			case "x-gzip":
+				return new GzipDecompressingEntity(entity);
+			case "deflate":
+				return new DeflateDecompressingEntity(entity);
+			case "identity":
+			case "":
+				return entity;
+			default:
+				throw new IOException("Unsupported Content-Encoding " + encoding.getValue());
+		}
+	}
+
+	/**
+	 * Executes an HTTP GET request for the specified path. The response may be compressed,
+	 * in which case it is decompressed as it is streamed to `handler`.
 	 * 
 	 * @param path    The path.
-	 * @param query   The query string, or null.
+	 * @param params  The query parameters.
 	 * @param handler The response handler.
 	 * @return The parsed response.
 	 * @throws IOException If an error occurs.
@@ -121,20 +508,99 @@ public class S3Sync implements Sync {
 	private <T> T executeHttpRequest(final String path, final Map<String, String> params,
 			final ResponseHandler<T> handler) throws IOException {
 
-		final URIBuilder uri = new URIBuilder()
-				.setScheme("https")
-				.setHost(bucketName + ".s3.amazonaws.com/")
-				.setPath(path);
+		final HttpGet request = newHttpGet(path, params);
+		request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
 
-		params.forEach((param, value) -> uri.setParameter(param, value));
+		return client.execute(request, res -> {
+			validate(res, request.getURI(), HttpStatus.SC_OK);
+			return handler.handleResponse(decode(res.getEntity()).getContent());
+		});
+	}
 
-		try {
-			return httpClient.execute(new HttpGet(uri.build()), res -> {
-				return handler.handleResponse(res.getEntity().getContent());
-			});
-		} catch (URISyntaxException e) {
-			throw new IOException(e);
+	/**
+	 * Resolves the candidate part sizes for verifying a multipart {@link S3Object}. The
+	 * configured part size is tried first, followed by the size inferred from the object's
+	 * size and part count, and finally the defaults of common S3 clients. Only part sizes
+	 * that would yield the object's part count are returned.
+	 * 
+	 * @param obj The multipart {@link S3Object}.
+	 * @return The candidate part sizes, in bytes.
+	 */
+	private long[] partSizes(final S3Object obj) {
+
+		final long size = obj.getSize(), parts = obj.getParts();
+		final long inferred = (size + parts - 1) / parts;
+		final long mebibyte = 1024 * 1024;
+
+		return LongStream.of(partSize,
+						(inferred + mebibyte - 1) / mebibyte * mebibyte,
+						inferred,
+						8 * mebibyte,
+						16 * mebibyte,
+						5 * mebibyte)
+				.filter(candidate -> candidate > 0)
+				.filter(candidate -> (size + candidate - 1) / candidate == parts)
+				.distinct()
+				.toArray();
+	}
+
+	/**
+	 * Calculates the ETag of the given File as it relates to the given {@link S3Object}. For
+	 * multipart objects, the File is digested in each candidate part size, and the matching
+	 * ETag is returned if there is one.
+	 * 
+	 * @param file The File.
+	 * @param obj The {@link S3Object}.
+	 * @return The ETag of the File.
+	 * @throws IOException If an error occurs.
+	 */
+	private String etag(final File file, final S3Object obj) throws IOException {
+
+		if (obj.isMultipart()) {
+			final long[] partSizes = partSizes(obj);
+			if (partSizes.length > 0) {
+				final String[] etags = S3.multipartEtags(file, partSizes);
+				for (String etag : etags) {
+					if (StringUtils.equals(etag, obj.getEtag())) {
+						return etag;
+					}
+				}
+				return etags[0];
+			}
+		}
+
+		return S3.md5Hex(file);
+	}
+
+	/**
+	 * Resolves the ETag of the given File, consulting the {@link DigestCache} if one is
+	 * configured. A cached MD5 is authoritative for simple uploads, but a File has one
+	 * multipart ETag per part size, so a cached multipart ETag is only trusted if it matches.
+	 * 
+	 * @param file The File.
+	 * @param obj The {@link S3Object}.
+	 * @return The ETag of the File.
+	 * @throws IOException If an error occurs.
+	 */
+	private String cachedEtag(final File file, final S3Object obj) throws IOException {
+
+		if (digestCache == null) {
+			return etag(file, obj);
+		}
+
+		final String cached = digestCache.get(file);
+		if (cached != null) {
+			if (StringUtils.equals(cached, obj.getEtag())) {
+				return cached;
+			}
+			if (!obj.isMultipart() && !StringUtils.contains(cached, '-')) {
+				return cached;
+			}
 		}
+
+		final String etag = etag(file, obj);
+		digestCache.put(file, etag);
+		return etag;
 	}
 
 	/**
@@ -154,8 +620,11 @@ public class S3Sync implements Sync {
 
 			assert (file.isFile());
 
-			final String md5 = DigestUtils.md5Hex(FileUtils.readFileToByteArray(file));
-			if (StringUtils.equals(md5, obj.getEtag())) {
+			if (file.length() != obj.getSize()) {
+				return true;
+			}
+
+			if (StringUtils.equals(cachedEtag(file, obj), obj.getEtag())) {
 				return false;
 			}
 		}
@@ -164,88 +633,865 @@ public class S3Sync implements Sync {
 	}
 
 	/**
-	 * Synchronizes the given {@link S3Object}.
+	 * Transfers the remainder of `in` to `file` at the given position, truncating anything
+	 * beyond it. Bytes move from the channel into the FileChannel without an intermediate
+	 * heap stream or per-download copy buffer.
 	 * 
-	 * @param obj The {@link S3Object}.
-	 * @return The resulting File.
+	 * @param in The ReadableByteChannel.
+	 * @param file The File.
+	 * @param position The position at which to begin writing.
+	 * @return The number of bytes transferred.
 	 * @throws IOException If an error occurs.
 	 */
-	private File sync(final S3Object obj) throws IOException {
+	private long transfer(final ReadableByteChannel in, final File file, final long position) throws IOException {
 
-		final File file = map(obj);
-		if (file.exists()) {
-			if (file.isDirectory() != obj.isDirectory()) {
-				FileUtils.deleteQuietly(file);
+		try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			out.truncate(position);
+
+			long offset = position, count;
+			while ((count = out.transferFrom(in, offset, TRANSFER_SIZE)) > 0) {
+				offset += count;
 			}
-		}
 
-		if (obj.isDirectory()) {
-			FileUtils.forceMkdir(file);
-		} else {
-			FileUtils.forceMkdirParent(file);
-			executeHttpRequest(obj.getKey(), Collections.emptyMap(), inputStream -> {
-				FileOutputStream out = new FileOutputStream(file);
-				try {
-					return IOUtils.copy(inputStream, new FileOutputStream(file));
-				} finally {
-					out.close();
-				}
-			});
+			return offset - position;
 		}
-
-		return file;
 	}
 
-	@Override
-	public File map(final Asset asset) {
-		return new File(destination, mapper.apply((S3Object) asset).getPath());
+	/**
+	 * Validates the status of the given response.
+	 * 
+	 * @param res The response.
+	 * @param request The request.
+	 * @param statuses The acceptable status codes.
+	 * @return The status code.
+	 * @throws HttpResponseException If the status is not acceptable.
+	 */
+	private static int validate(final HttpResponse res, final Object request, final int... statuses)
+			throws HttpResponseException {
+
+		final int status = res.getStatusLine().getStatusCode();
+		for (int acceptable : statuses) {
+			if (status == acceptable) {
+				return status;
+			}
+		}
+
+		throw new HttpResponseException(status, request + ": " + res.getStatusLine().getReasonPhrase());
 	}
 
-	@Override
-	public Observable<Index> index() {
-		return Observable.create(source -> {
+	/**
+	 * Ensures that the file system has room for the remainder of the given {@link S3Object}.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 * @param file The destination File.
+	 * @param offset The number of bytes already downloaded.
+	 * @throws IOException If there is insufficient space.
+	 */
+	private static void reserve(final S3Object obj, final File file, final long offset) throws IOException {
 
-			final Map<String, String> params = new HashMap<>();
-			while (true) {
+		final long usable = Files.getFileStore(file.getParentFile().toPath()).getUsableSpace();
+		if (usable < obj.getSize() - offset) {
+			throw new S3PermanentException(obj + ": insufficient disk space, " + usable + " bytes available");
+		}
+	}
 
-				final S3Bucket bucket = new S3Bucket(this, executeHttpRequest("", params, S3::getDocument));
+	/**
+	 * @param obj The {@link S3Object}.
+	 * @param file The destination File.
+	 * @param suffix The file name suffix.
+	 * @return The File beside `file` named for the ETag of `obj` and the given suffix.
+	 * @throws IOException If the ETag is malformed, and may not be used in a file name.
+	 */
+	private static File sibling(final S3Object obj, final File file, final String suffix) throws IOException {
 
-				if (predicate != null) {
-					source.onNext(bucket.filter(predicate));
-				} else {
-					source.onNext(bucket);
-				}
+		if (!S3.isEtag(obj.getEtag())) {
+			throw new S3PermanentException(obj + ": malformed ETag " + obj.getEtag());
+		}
 
-				if (bucket.count() < 1000) {
-					source.onComplete();
-					break;
-				}
+		return new File(file.getPath() + "." + obj.getEtag() + suffix);
+	}
 
-				params.put("marker", bucket.getMarker());
-			}
-		});
+	/**
+	 * Promotes the given partial file to `file`, atomically where the file system allows.
+	 * 
+	 * @param part The partial file.
+	 * @param file The destination File.
+	 * @throws IOException If an error occurs.
+	 */
+	private static void promote(final File part, final File file) throws IOException {
+		AtomicFiles.move(part.toPath(), file.toPath());
 	}
 
-	@Override
-	public Single<Delta> delta(final Index index) {
-		return Single.just(index)
-				.cast(S3Bucket.class)
-				.flatMap(bucket -> {
-					return Observable.fromIterable(bucket)
-							.cast(S3Object.class)
-							.filter(this::delta)
-							.toList()
-							.map(objects -> new S3Delta(bucket, objects));
-				});
+	/**
+	 * @param obj The {@link S3Object}.
+	 * @return True if the ETag of the given {@link S3Object} can be reproduced locally, so
+	 * that a file assembled from parts of it can be validated.
+	 */
+	private boolean isVerifiable(final S3Object obj) {
+		return !obj.isMultipart() || partSizes(obj).length > 0;
 	}
 
-	@Override
-	public Observable<File> sync(final Delta delta) {
-		return Observable.fromIterable(delta).map(asset -> (S3Object) asset).map(this::sync);
+	/**
+	 * @param obj The {@link S3Object}.
+	 * @return True if the given {@link S3Object} should be downloaded in parallel ranges.
+	 */
+	private boolean isRanged(final S3Object obj) {
+
+		if (rangeThreshold <= 0 || rangeParallelism < 2 || obj.getSize() <= rangeThreshold) {
+			return false;
+		}
+
+		return isVerifiable(obj);
 	}
 
-	@Override
+	/**
+	 * Reads exactly `length` bytes from `in`, writing them to `out` at the given position.
+	 * Positional writes do not disturb the position of the FileChannel, so several ranges may
+	 * be written through it at once.
+	 * 
+	 * @param in The ReadableByteChannel.
+	 * @param out The FileChannel.
+	 * @param position The position at which to begin writing.
+	 * @param length The number of bytes to write.
+	 * @throws IOException If an error occurs, or `in` ends prematurely.
+	 */
+	private static void write(final ReadableByteChannel in, final FileChannel out, final long position,
+			final long length) throws IOException {
+
+		final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, RANGE_BUFFER_SIZE));
+		final long end = position + length;
+
+		long offset = position;
+		while (offset < end) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), end - offset));
+
+			if (in.read(buffer) < 0) {
+				throw new EOFException("Expected " + length + " bytes, received " + (offset - position));
+			}
+
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				offset += out.write(buffer, offset);
+			}
+		}
+	}
+
+	/**
+	 * Downloads the given byte range of the given {@link S3Object} to its position in `out`.
+	 * The request is conditional on the ETag of the object, so that ranges of different
+	 * versions are never assembled.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 * @param out The FileChannel of the partial file.
+	 * @param start The first byte of the range.
+	 * @param end The last byte of the range, inclusive.
+	 * @return The number of bytes downloaded.
+	 * @throws IOException If an error occurs.
+	 */
+	private long downloadRange(final S3Object obj, final FileChannel out, final long start, final long end)
+			throws IOException {
+
+		final HttpGet request = newHttpGet(obj.getKey(), Collections.emptyMap());
+		request.setHeader(HttpHeaders.RANGE, "bytes=" + start + "-" + end);
+		request.setHeader(HttpHeaders.IF_MATCH, "\"" + obj.getEtag() + "\"");
+
+		return client.execute(request, res -> {
+
+			validate(res, obj, HttpStatus.SC_PARTIAL_CONTENT);
+
+			final Header range = res.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+			if (range == null || !range.getValue().startsWith("bytes " + start + "-" + end + "/")) {
+				throw new S3PermanentException(obj + ": unexpected Content-Range " + range);
+			}
+
+			final long length = end - start + 1;
+			final long contentLength = res.getEntity().getContentLength();
+			if (contentLength >= 0 && contentLength != length) {
+				throw new S3PermanentException(obj + ": unexpected Content-Length " + contentLength);
+			}
+
+			ReadableByteChannel in = Channels.newChannel(res.getEntity().getContent());
+			if (rateLimiter != null) {
+				in = rateLimiter.limit(in);
+			}
+
+			write(in, out, start, length);
+			return length;
+		});
+	}
+
+	/**
+	 * Downloads the given byte ranges of the given {@link S3Object} to their positions in
+	 * `out`, over as many as the configured number of connections. Should one fail, the
+	 * remaining ranges are abandoned, and the download is retried from the contiguous ranges
+	 * that were completed.
+	 * 
+	 * As the contiguous ranges grow, they are flushed to the partial file, and then recorded in
+	 * its range journal.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 * @param part The partial file, or null if its ranges are not journaled.
+	 * @param out The FileChannel of the partial file.
+	 * @param ranges The ranges, as pairs of first and last (inclusive) byte positions.
+	 * @param completed Flags set, while synchronized on the array, as each range completes.
+	 * @throws IOException If an error occurs.
+	 */
+	private void downloadRanges(final S3Object obj, final File part, final FileChannel out,
+			final List<long[]> ranges, final boolean[] completed) throws IOException {
+
+		final int count = ranges.size();
+		final AtomicInteger next = new AtomicInteger();
+
+		final List<FutureTask<Void>> workers = new ArrayList<>();
+
+		for (int i = 0; i < Math.min(rangeParallelism, count); i++) {
+			final FutureTask<Void> worker = new FutureTask<>(() -> {
+				for (int range; (range = next.getAndIncrement()) < count;) {
+					final long start = ranges.get(range)[0], end = ranges.get(range)[1];
+
+					downloadRange(obj, out, start, end);
+
+					synchronized (completed) {
+						completed[range] = true;
+
+						if (part != null) {
+							final long contiguous = contiguous(ranges, completed);
+							if (contiguous > start) {
+								out.force(false);
+								journal(part, contiguous);
+							}
+						}
+					}
+				}
+				return null;
+			});
+
+			workers.add(worker);
+			Schedulers.io().scheduleDirect(worker);
+		}
+
+		IOException failure = null;
+
+		for (FutureTask<Void> worker : workers) {
+			try {
+				worker.get();
+			} catch (ExecutionException ee) {
+				next.set(count);
+				if (failure == null) {
+					if (ee.getCause() instanceof IOException) {
+						failure = (IOException) ee.getCause();
+					} else {
+						failure = new IOException(ee.getCause());
+					}
+				}
+			} catch (InterruptedException ie) {
+				next.set(count);
+				Thread.currentThread().interrupt();
+				failure = new InterruptedIOException();
+				break;
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * @param part The partial file.
+	 * @return The range journal of the given partial file.
+	 */
+	private static File journal(final File part) {
+		return new File(part.getPath() + RANGES);
+	}
+
+	/**
+	 * Records the length of the contiguous prefix of the given partial file.
+	 * 
+	 * @param part The partial file.
+	 * @param length The number of contiguous bytes written to `part`.
+	 * @throws IOException If an error occurs.
+	 */
+	private static void journal(final File part, final long length) throws IOException {
+		FileUtils.writeStringToFile(journal(part), Long.toString(length), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Resolves the number of bytes of the given partial file from which its download may be
+	 * resumed. Ranges are written out of order, so a partial file with a range journal may
+	 * contain holes beyond the contiguous prefix recorded there. It is truncated to that prefix,
+	 * and the journal is removed.
+	 * 
+	 * @param part The partial file.
+	 * @return The number of bytes already downloaded.
+	 * @throws IOException If an error occurs.
+	 */
+	private static long resume(final File part) throws IOException {
+
+		final File journal = journal(part);
+
+		if (!part.isFile()) {
+			FileUtils.deleteQuietly(journal);
+			return 0L;
+		}
+
+		long offset = part.length();
+
+		if (journal.exists()) {
+			try {
+				final long length = Long.parseLong(FileUtils.readFileToString(journal, StandardCharsets.UTF_8).trim());
+				offset = Math.max(0L, Math.min(offset, length));
+			} catch (NumberFormatException nfe) {
+				offset = 0L;
+			}
+
+			try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(offset);
+			}
+
+			Files.delete(journal.toPath());
+		}
+
+		return offset;
+	}
+
+	/**
+	 * @param ranges The ranges, as pairs of first and last (inclusive) byte positions.
+	 * @param completed The completed ranges. The caller must hold their lock.
+	 * @return The end of the contiguous ranges that were completed.
+	 */
+	private static long contiguous(final List<long[]> ranges, final boolean[] completed) {
+
+		int contiguous = 0;
+		while (contiguous < completed.length && completed[contiguous]) {
+			contiguous++;
+		}
+
+		return contiguous == 0 ? ranges.get(0)[0] : ranges.get(contiguous - 1)[1] + 1;
+	}
+
+	/**
+	 * Downloads the remainder of the given {@link S3Object} to `part`, in ranges of the
+	 * configured size. The contiguous ranges are recorded in a range journal as they complete,
+	 * so that a download that is killed resumes from them, rather than from the length of
+	 * `part`. Should a range fail, `part` is truncated to the contiguous ranges, so that the
+	 * next attempt resumes from there. The journal is removed once every range is complete.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 * @param part The partial file.
+	 * @param offset The number of bytes already downloaded.
+	 * @throws IOException If an error occurs.
+	 */
+	private void downloadRanges(final S3Object obj, final File part, final long offset) throws IOException {
+
+		final long size = obj.getSize();
+
+		final List<long[]> ranges = new ArrayList<>();
+		for (long start = offset; start < size; start += rangeSize) {
+			ranges.add(new long[] { start, Math.min(start + rangeSize, size) - 1 });
+		}
+
+		final boolean[] completed = new boolean[ranges.size()];
+
+		journal(part, offset);
+
+		try (FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			try {
+				downloadRanges(obj, part, out, ranges, completed);
+			} catch (IOException ioe) {
+				synchronized (completed) {
+					out.truncate(contiguous(ranges, completed));
+				}
+				throw ioe;
+			}
+		}
+
+		Files.delete(journal(part).toPath());
+	}
+
+	/**
+	 * Rebuilds the given {@link S3Object} from the local `file` using its block checksum
+	 * sidecar. Blocks found anywhere in `file` are copied from it, and only the remaining
+	 * blocks are downloaded, coalesced into ranges of up to the configured range size. The
+	 * rebuilt file is validated against the object's ETag before it replaces `file`.
+	 * 
+	 * The sidecar is requested only once, as the whole download is retried should this fail.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 * @param sidecar The block checksum sidecar of `obj`.
+	 * @param file The destination File, an earlier version of `obj`.
+	 * @return True if the object was rebuilt, false if the sidecar could not be used.
+	 * @throws IOException If an error occurs.
+	 */
+	private boolean downloadBlocks(final S3Object obj, final S3Object sidecar, final File file) throws IOException {
+
+		final S3Blocks blocks = executeHttpRequest(sidecar.getKey(), Collections.emptyMap(),
+				inputStream -> new S3Blocks(inputStream, obj.getSize()));
+		if (!StringUtils.equals(blocks.getEtag(), obj.getEtag())) {
+			return false;
+		}
+
+		final long[] offsets = blocks.match(file);
+
+		final long size = obj.getSize(), blockSize = blocks.getBlockSize();
+		final long maxRangeSize = Math.max(rangeSize, blockSize);
+
+		final File delta = sibling(obj, file, DELTA);
+		reserve(obj, file, 0L);
+
+		try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			FileChannel out = FileChannel.open(delta.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			final List<long[]> ranges = new ArrayList<>();
+
+			for (int i = 0; i < offsets.length; i++) {
+				final long start = i * blockSize, end = Math.min(start + blockSize, size) - 1;
+
+				if (offsets[i] >= 0) {
+					out.position(start);
+					for (long count = 0, transferred; count < blockSize; count += transferred) {
+						transferred = in.transferTo(offsets[i] + count, blockSize - count, out);
+						if (transferred == 0) {
+							throw new IOException(file + ": modified while rebuilding " + obj);
+						}
+					}
+					continue;
+				}
+
+				final long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+				if (last != null && last[1] + 1 == start && end - last[0] < maxRangeSize) {
+					last[1] = end;
+				} else {
+					ranges.add(new long[] { start, end });
+				}
+			}
+
+			downloadRanges(obj, null, out, ranges, new boolean[ranges.size()]);
+		} catch (IOException ioe) {
+			FileUtils.deleteQuietly(delta);
+			throw ioe;
+		}
+
+		if (delta.length() != size || !StringUtils.equals(etag(delta, obj), obj.getEtag())) {
+			FileUtils.deleteQuietly(delta);
+			return false;
+		}
+
+		promote(delta, file);
+		return true;
+	}
+
+	/**
+	 * Downloads the remainder of the given {@link S3Object} to `part` in a single stream,
+	 * resuming from `offset` with a Range request if it is non-zero.
+	 * 
+	 * If the ETag of `file` is known, the request is made conditional on it. Should the object
+	 * have reverted to the local version since it was listed, the server answers `304` and
+	 * nothing is transferred. Otherwise, the status, ETag and Content-Length of the response
+	 * are validated before anything is written.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 * @param file The destination File.
+	 * @param part The partial file.
+	 * @param offset The number of bytes already downloaded.
+	 * @return True if the object was downloaded, false if the local File is current.
+	 * @throws IOException If an error occurs.
+	 */
+	private boolean downloadStream(final S3Object obj, final File file, final File part, final long offset)
+			throws IOException {
+
+		final HttpGet request = newHttpGet(obj.getKey(), Collections.emptyMap());
+		if (offset > 0) {
+			request.setHeader(HttpHeaders.RANGE, "bytes=" + offset + "-");
+			request.setHeader(HttpHeaders.IF_RANGE, "\"" + obj.getEtag() + "\"");
+		}
+
+		final String localEtag = file.isFile() && digestCache != null ? digestCache.get(file) : null;
+		if (localEtag != null) {
+			request.setHeader(HttpHeaders.IF_NONE_MATCH, "\"" + localEtag + "\"");
+		}
+
+		return client.execute(request, res -> {
+
+			final int status = validate(res, obj,
+					HttpStatus.SC_OK, HttpStatus.SC_PARTIAL_CONTENT, HttpStatus.SC_NOT_MODIFIED);
+
+			if (status == HttpStatus.SC_NOT_MODIFIED) {
+				return false;
+			}
+
+			final boolean resume = status == HttpStatus.SC_PARTIAL_CONTENT;
+			if (resume) {
+				final Header range = res.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+				if (range == null || !range.getValue().startsWith("bytes " + offset + "-")) {
+					throw new S3PermanentException(obj + ": unexpected Content-Range " + range);
+				}
+			}
+
+			final Header etag = res.getFirstHeader(HttpHeaders.ETAG);
+			if (etag != null && !StringUtils.remove(etag.getValue(), '"').equals(obj.getEtag())) {
+				throw new S3PermanentException(obj + ": modified since listing, ETag " + etag.getValue());
+			}
+
+			final long position = resume ? offset : 0L;
+
+			final long length = res.getEntity().getContentLength();
+			if (length >= 0 && length != obj.getSize() - position) {
+				throw new S3PermanentException(obj + ": unexpected Content-Length " + length);
+			}
+
+			ReadableByteChannel in = Channels.newChannel(res.getEntity().getContent());
+			if (rateLimiter != null) {
+				in = rateLimiter.limit(in);
+			}
+
+			transfer(in, part, position);
+			return true;
+		});
+	}
+
+	/**
+	 * Downloads the given {@link S3Object} to a partial file next to `file`, whose name
+	 * records the expected ETag. A partial file left by an interrupted download is resumed.
+	 * The partial file is promoted to `file` only once it is complete.
+	 * 
+	 * If the object has a block checksum sidecar, and an earlier version of it exists locally,
+	 * it is rebuilt from the blocks of that version, and only the blocks that differ are
+	 * downloaded. Should the sidecar be missing, malformed or stale, or the rebuild fail for any
+	 * reason but an interruption, the object is downloaded as though it had no sidecar.
+	 * 
+	 * Otherwise, objects larger than the configured threshold are downloaded in parallel
+	 * ranges, and the assembled file is validated as a whole against the object's ETag. Should
+	 * validation fail, the object is downloaded again in a single stream.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 * @param file The destination File.
+	 * @return True if the object was downloaded, false if the local File is current.
+	 * @throws IOException If an error occurs.
+	 */
+	private boolean download(final S3Object obj, final File file) throws IOException {
+
+		final File part = sibling(obj, file, PART);
+
+		long offset = resume(part);
+		if (offset > obj.getSize()) {
+			FileUtils.deleteQuietly(part);
+			offset = 0L;
+		}
+
+		if (offset == 0L && file.isFile() && isVerifiable(obj)) {
+			final S3Object sidecar = blocks.get(obj.getKey() + S3Blocks.SUFFIX);
+			if (sidecar != null) {
+				try {
+					if (downloadBlocks(obj, sidecar, file)) {
+						return true;
+					}
+				} catch (IOException ioe) {
+					FileUtils.deleteQuietly(sibling(obj, file, DELTA));
+					if (isInterruption(ioe)) {
+						throw ioe;
+					}
+				}
+			}
+		}
+
+		if (isRanged(obj)) {
+			if (offset < obj.getSize()) {
+				reserve(obj, file, offset);
+				downloadRanges(obj, part, offset);
+			}
+
+			if (StringUtils.equals(etag(part, obj), obj.getEtag())) {
+				promote(part, file);
+				return true;
+			}
+
+			FileUtils.deleteQuietly(part);
+			offset = 0L;
+		}
+
+		if (offset < obj.getSize() || !part.exists()) {
+			reserve(obj, file, offset);
+
+			if (!downloadStream(obj, file, part, offset)) {
+				FileUtils.deleteQuietly(part);
+				return false;
+			}
+		}
+
+		if (part.length() != obj.getSize()) {
+			throw new IOException(obj + ": incomplete download, " + part.length() + " of " + obj.getSize() + " bytes");
+		}
+
+		promote(part, file);
+		return true;
+	}
+
+	/**
+	 * Prepares the destination of the given {@link S3Object}, replacing a file with a directory
+	 * or vice versa, and creating the necessary directories.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 * @return The destination File.
+	 * @throws IOException If an error occurs.
+	 */
+	private File prepare(final S3Object obj) throws IOException {
+
+		final File file = map(obj);
+		if (file.exists()) {
+			if (file.isDirectory() != obj.isDirectory()) {
+				FileUtils.deleteQuietly(file);
+			}
+		}
+
+		if (obj.isDirectory()) {
+			FileUtils.forceMkdir(file);
+		} else {
+			FileUtils.forceMkdirParent(file);
+		}
+
+		return file;
+	}
+
+	/**
+	 * Synchronizes the given {@link S3Object}. If a {@link ContentStore} is configured, the
+	 * object is taken from it when it holds the object's ETag, and is otherwise added to it
+	 * once downloaded.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 * @return The resulting File, or null if the object has reverted to the local version since
+	 * it was listed, so that the local File does not hold the listed content.
+	 * @throws IOException If an error occurs.
+	 */
+	private File sync(final S3Object obj) throws IOException {
+
+		final File file = prepare(obj);
+
+		if (!obj.isDirectory()) {
+
+			if (contentStore != null && contentStore.get(obj.getEtag(), obj.getSize(), file)) {
+				if (digestCache != null) {
+					digestCache.put(file, obj.getEtag());
+				}
+				return file;
+			}
+
+			if (!retry(() -> download(obj, file))) {
+				return null;
+			}
+
+			if (digestCache != null) {
+				digestCache.put(file, obj.getEtag());
+			}
+
+			if (contentStore != null) {
+				contentStore.put(obj.getEtag(), file);
+			}
+		}
+
+		return file;
+	}
+
+	/**
+	 * Synchronizes the given {@link S3Object} by copying `source`, which holds its content,
+	 * through a partial file.
+	 * 
+	 * @param obj The {@link S3Object}.
+	 * @param source The File holding the content of `obj`.
+	 * @return The resulting File.
+	 * @throws IOException If an error occurs.
+	 */
+	private File sync(final S3Object obj, final File source) throws IOException {
+
+		final File file = prepare(obj);
+
+		if (!obj.isDirectory() && !file.equals(source)) {
+
+			if (contentStore == null || !contentStore.get(obj.getEtag(), obj.getSize(), file)) {
+				final File part = sibling(obj, file, PART);
+				Files.copy(source.toPath(), part.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				promote(part, file);
+			}
+
+			if (digestCache != null) {
+				digestCache.put(file, obj.getEtag());
+			}
+		}
+
+		return file;
+	}
+
+	@Override
+	public File map(final Asset asset) {
+		return new File(destination, mapper.apply((S3Object) asset).getPath());
+	}
+
+	/**
+	 * Requests a page of the bucket listing with ListObjectsV2. The listing is scoped to the
+	 * configured prefix and delimiter by the server. The request is executed, and its response
+	 * parsed, in the background.
+	 * 
+	 * A page may instead continue from a marker, for servers that answer in the ListObjects
+	 * (V1) format and so provide no continuation token. The marker is sent as both `start-after`
+	 * and `marker`, so that it is understood in either format.
+	 * 
+	 * @param continuationToken The continuation token of the previous page, or null.
+	 * @param marker The key after which the page begins, or null.
+	 * @return A Future yielding the {@link S3Bucket} page.
+	 */
+	private Future<S3Bucket> list(final String continuationToken, final String marker) {
+
+		final Map<String, String> params = new HashMap<>();
+		params.put("list-type", "2");
+
+		if (StringUtils.isNotEmpty(prefix)) {
+			params.put("prefix", prefix);
+		}
+
+		if (StringUtils.isNotEmpty(delimiter)) {
+			params.put("delimiter", delimiter);
+		}
+
+		if (continuationToken != null) {
+			params.put("continuation-token", continuationToken);
+		} else if (marker != null) {
+			params.put("start-after", marker);
+			params.put("marker", marker);
+		}
+
+		final FutureTask<S3Bucket> page = new FutureTask<>(() -> {
+			return retry(() -> executeHttpRequest("", params, inputStream -> new S3Bucket(this, inputStream)));
+		});
+
+		Schedulers.io().scheduleDirect(page);
+		return page;
+	}
+
+	/**
+	 * Pages through the bucket listing. Page N+1 is requested as soon as page N has been
+	 * parsed, so that it is in flight while page N is processed downstream. Connections for
+	 * subsequent downloads are prewarmed while the listing runs. Truncated pages without a
+	 * continuation token are continued from their last key, and a listing that fails to advance
+	 * is an error.
+	 */
+	@Override
+	public Observable<Index> index() {
+		return Observable.<Index>create(source -> {
+
+			Future<S3Bucket> next = list(null, null);
+			prewarm();
+
+			String marker = null;
+
+			while (next != null && !source.isDisposed()) {
+
+				final Future<S3Bucket> page = next;
+				source.setCancellable(() -> page.cancel(true));
+
+				final S3Bucket bucket;
+				try {
+					bucket = page.get();
+				} catch (ExecutionException ee) {
+					if (ee.getCause() instanceof Exception) {
+						throw (Exception) ee.getCause();
+					}
+					throw ee;
+				}
+
+				blocks.putAll(bucket.getBlocks());
+
+				if (!bucket.isTruncated()) {
+					next = null;
+				} else if (bucket.getNextContinuationToken() != null) {
+					next = list(bucket.getNextContinuationToken(), null);
+				} else if (bucket.getMarker() != null && !bucket.getMarker().equals(marker)) {
+					marker = bucket.getMarker();
+					next = list(null, marker);
+				} else {
+					throw new IOException(bucketName + ": truncated listing page without continuation");
+				}
+
+				if (predicate != null) {
+					source.onNext(bucket.filter(predicate));
+				} else {
+					source.onNext(bucket);
+				}
+			}
+
+			source.onComplete();
+		}).subscribeOn(Schedulers.io());
+	}
+
+	/**
+	 * Derives the index of this {@link S3Sync} from a listing of the same bucket fetched by
+	 * another, so that several destinations may be synchronized from a single listing. Each
+	 * page is filtered by the prefix and predicate of this {@link S3Sync}.
+	 * 
+	 * @param listing The pages of the listing.
+	 * @return An Observable emitting the Indexes of this {@link S3Sync}.
+	 */
+	public Observable<Index> index(final Observable<Index> listing) {
+		return listing.cast(S3Bucket.class).map(page -> {
+
+			blocks.putAll(page.getBlocks());
+
+			return new S3Bucket(this, page, obj -> {
+				if (StringUtils.isNotEmpty(prefix) && !obj.getKey().startsWith(prefix)) {
+					return false;
+				}
+				return predicate == null || predicate.test(obj);
+			});
+		});
+	}
+
+	/**
+	 * Performs delta checks on a bounded pool of workers, largest objects first, so that the
+	 * slowest digests are not left for the end. Objects that the {@link Manifest} shows to be
+	 * current are skipped without leaving the calling thread. The resulting {@link S3Delta} retains the
+	 * listing order of the {@link S3Bucket}.
+	 */
+	@Override
+	public Single<Delta> delta(final Index index) {
+		return Single.just(index)
+				.cast(S3Bucket.class)
+				.flatMap(bucket -> {
+					return Observable.fromIterable(bucket.getObjects())
+							.filter(obj -> manifest == null || !manifest.isCurrent(map(obj), obj.getEtag(), obj.getSize()))
+							.sorted(Comparator.comparingLong(S3Object::getSize).reversed())
+							.flatMap(obj -> Observable.just(obj)
+									.filter(this::delta)
+									.subscribeOn(deltaScheduler), parallelism)
+							.collect(HashSet<S3Object>::new, Set::add)
+							.map(deltas -> bucket.getObjects().stream()
+									.filter(deltas::contains)
+									.collect(Collectors.toList()))
+							.map(objects -> new S3Delta(bucket, objects));
+				});
+	}
+
+	@Override
+	public Observable<File> sync(final Delta delta) {
+		return Observable.fromIterable(delta)
+				.flatMap(asset -> sync(asset).toObservable(), concurrency);
+	}
+
+	@Override
+	public Maybe<File> sync(final Asset asset) {
+		return Maybe.fromCallable(() -> sync((S3Object) asset)).subscribeOn(Schedulers.io());
+	}
+
+	@Override
+	public Single<File> sync(final Asset asset, final File source) {
+		return Single.fromCallable(() -> sync((S3Object) asset, source)).subscribeOn(Schedulers.io());
+	}
+
+	@Override
 	public void close() throws IOException {
+		if (ownsDeltaExecutor) {
+			deltaExecutor.shutdownNow();
+		}
 		httpClient.close();
 	}
 }
@@ -0,0 +1,128 @@
+package org.quetoo.installer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link ContentStore} class.
+ *
+ * @author jdolan
+ */
+public class ContentStoreTest {
+
+	private static final String[] ETAGS = {
+		"00000000000000000000000000000000",
+		"11111111111111111111111111111111",
+		"22222222222222222222222222222222",
+		"33333333333333333333333333333333-2",
+	};
+
+	private File dir, store, install;
+
+	@Before
+	public void before() throws IOException {
+		dir = Files.createTempDirectory("contentstoretest").toFile();
+		store = new File(dir, "store");
+		install = new File(dir, "install");
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteQuietly(dir);
+	}
+
+	/**
+	 * @param etag The ETag.
+	 * @return The blob of the given ETag.
+	 */
+	private File blob(final String etag) {
+		return new File(new File(store, etag.substring(0, 2)), etag);
+	}
+
+	/**
+	 * Adds a file of 100 bytes for each of {@link #ETAGS} to the store, each used a minute
+	 * after the last.
+	 *
+	 * @param contentStore The {@link ContentStore}.
+	 */
+	private void populate(final ContentStore contentStore) throws IOException {
+
+		final long now = System.currentTimeMillis();
+
+		for (int i = 0; i < ETAGS.length; i++) {
+			final File file = new File(install, "file_" + i);
+			FileUtils.writeByteArrayToFile(file, new byte[100]);
+
+			contentStore.put(ETAGS[i], file);
+			assertTrue(blob(ETAGS[i]).exists());
+
+			new File(blob(ETAGS[i]).getPath() + ".used").setLastModified(now - (ETAGS.length - i) * 60_000L);
+		}
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() throws IOException {
+
+		final ContentStore contentStore = new ContentStore(store, 300);
+		populate(contentStore);
+
+		FileUtils.deleteQuietly(new File(install, "file_0"));
+		FileUtils.deleteQuietly(new File(install, "file_1"));
+		FileUtils.deleteQuietly(new File(install, "file_2"));
+
+		contentStore.evict();
+
+		assertFalse(blob(ETAGS[0]).exists());
+		assertTrue(blob(ETAGS[1]).exists());
+		assertTrue(blob(ETAGS[2]).exists());
+		assertTrue(blob(ETAGS[3]).exists());
+	}
+
+	@Test
+	public void retainReferenced() throws IOException {
+
+		final ContentStore contentStore = new ContentStore(store, 50);
+		populate(contentStore);
+
+		FileUtils.deleteQuietly(new File(install, "file_2"));
+
+		contentStore.evict();
+
+		assertTrue(blob(ETAGS[0]).exists());
+		assertTrue(blob(ETAGS[1]).exists());
+		assertFalse(blob(ETAGS[2]).exists());
+		assertTrue(blob(ETAGS[3]).exists());
+
+		final File copy = new File(dir, "copy");
+		assertTrue(contentStore.get(ETAGS[0], 100, copy));
+		assertArrayEquals(new byte[100], FileUtils.readFileToByteArray(copy));
+	}
+
+	@Test
+	public void malformedEtag() throws IOException {
+
+		final File file = new File(install, "file");
+		FileUtils.writeByteArrayToFile(file, new byte[100]);
+
+		final ContentStore contentStore = new ContentStore(store, 300);
+
+		for (String etag : new String[] { "../../escaped", "../install/file", "0123456789ABCDEF0123456789ABCDEF" }) {
+			contentStore.put(etag, file);
+			assertFalse(contentStore.get(etag, 100, new File(install, "copy")));
+		}
+
+		assertFalse(new File(dir, "escaped").exists());
+		assertFalse(new File(install, "copy").exists());
+		assertFalse(store.exists());
+	}
+}
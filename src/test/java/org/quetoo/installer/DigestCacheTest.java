@@ -0,0 +1,74 @@
+package org.quetoo.installer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link DigestCache} class.
+ *
+ * @author jdolan
+ */
+public class DigestCacheTest {
+
+	private static final String DIGEST = "0123456789abcdef0123456789abcdef";
+
+	private File dir, file;
+	private DigestCache cache;
+
+	@Before
+	public void before() throws IOException {
+		dir = Files.createTempDirectory("digestcachetest").toFile();
+		file = new File(dir, "lib/file.dat");
+		FileUtils.writeStringToFile(file, "content", StandardCharsets.UTF_8);
+		cache = new DigestCache(new File(dir, DigestCache.NAME));
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteQuietly(dir);
+	}
+
+	@Test
+	public void persistence() throws IOException {
+
+		cache.put(file, DIGEST);
+		cache.save();
+
+		final DigestCache loaded = new DigestCache(cache.getFile());
+		assertEquals(1, loaded.count());
+		assertEquals(DIGEST, loaded.get(file));
+	}
+
+	@Test
+	public void sizeChanged() throws IOException {
+
+		cache.put(file, DIGEST);
+
+		final long lastModified = file.lastModified();
+		FileUtils.writeStringToFile(file, "modified content", StandardCharsets.UTF_8);
+		file.setLastModified(lastModified);
+
+		assertNull(cache.get(file));
+		assertEquals(0, cache.count());
+	}
+
+	@Test
+	public void lastModifiedChanged() {
+
+		cache.put(file, DIGEST);
+		file.setLastModified(file.lastModified() + 2000);
+
+		assertNull(cache.get(file));
+		assertEquals(0, cache.count());
+	}
+}
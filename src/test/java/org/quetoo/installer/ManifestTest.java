@@ -0,0 +1,115 @@
+package org.quetoo.installer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link Manifest} class.
+ *
+ * @author jdolan
+ */
+public class ManifestTest {
+
+	private static final String ETAG = "0123456789abcdef0123456789abcdef";
+
+	private File dir, file;
+	private Manifest manifest;
+
+	@Before
+	public void before() throws IOException {
+
+		dir = Files.createTempDirectory("manifesttest").toFile();
+		file = new File(dir, "share/file.dat");
+		FileUtils.writeStringToFile(file, "content", StandardCharsets.UTF_8);
+
+		manifest = new Manifest(new File(dir, Manifest.NAME));
+		manifest.update(Collections.singletonMap(file.getAbsoluteFile().toPath().normalize(), asset(ETAG, file.length())));
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteQuietly(dir);
+	}
+
+	/**
+	 * @param etag The ETag.
+	 * @param size The size.
+	 * @return An {@link Asset} with the given ETag and size.
+	 */
+	private static Asset asset(final String etag, final long size) {
+		return new Asset() {
+
+			@Override
+			public Index getIndex() {
+				return null;
+			}
+
+			@Override
+			public String getName() {
+				return "file.dat";
+			}
+
+			@Override
+			public String getEtag() {
+				return etag;
+			}
+
+			@Override
+			public long size() {
+				return size;
+			}
+
+			@Override
+			public boolean isDirectory() {
+				return false;
+			}
+		};
+	}
+
+	@Test
+	public void persistence() throws IOException {
+
+		manifest.save();
+
+		final Manifest loaded = new Manifest(manifest.getFile());
+		assertEquals(1, loaded.count());
+		assertTrue(loaded.isCurrent(file, ETAG, file.length()));
+	}
+
+	@Test
+	public void remoteChanged() {
+		assertFalse(manifest.isCurrent(file, "fedcba9876543210fedcba9876543210", file.length()));
+		assertFalse(manifest.isCurrent(file, ETAG, file.length() + 1));
+		assertTrue(manifest.isCurrent(file, ETAG, file.length()));
+	}
+
+	@Test
+	public void sizeChanged() throws IOException {
+
+		final long lastModified = file.lastModified();
+		FileUtils.writeStringToFile(file, "modified content", StandardCharsets.UTF_8);
+		file.setLastModified(lastModified);
+
+		assertFalse(manifest.isCurrent(file, ETAG, "content".length()));
+	}
+
+	@Test
+	public void lastModifiedChanged() {
+
+		file.setLastModified(file.lastModified() + 2000);
+
+		assertFalse(manifest.isCurrent(file, ETAG, file.length()));
+	}
+}
@@ -0,0 +1,112 @@
+package org.quetoo.installer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Unit tests for the {@link RateLimiter} class, against a manual clock.
+ *
+ * @author jdolan
+ */
+public class RateLimiterTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	public void borrowing() {
+
+		final RateLimiter limiter = new RateLimiter(1000, clock::get);
+
+		assertEquals(SECOND / 2, limiter.reserve(500));
+		assertEquals(SECOND, limiter.reserve(500));
+
+		clock.addAndGet(SECOND);
+		assertEquals(SECOND / 10, limiter.reserve(100));
+
+		clock.addAndGet(10 * SECOND);
+		assertEquals(0L, limiter.reserve(1000));
+		assertEquals(SECOND / 1000, limiter.reserve(1));
+	}
+
+	@Test
+	public void setRate() {
+
+		final RateLimiter limiter = new RateLimiter(1000, clock::get);
+
+		assertEquals(2 * SECOND, limiter.reserve(2000));
+
+		limiter.setRate(2000);
+		assertEquals(SECOND, limiter.reserve(0));
+
+		clock.addAndGet(SECOND / 2);
+		assertEquals(SECOND / 2, limiter.reserve(0));
+
+		limiter.setRate(0);
+		assertEquals(0L, limiter.reserve(1_000_000));
+
+		limiter.setRate(1000);
+		assertEquals(SECOND / 2, limiter.reserve(500));
+	}
+
+	@Test
+	public void unlimited() {
+
+		final AtomicLong reads = new AtomicLong();
+		final RateLimiter limiter = new RateLimiter(0, reads::incrementAndGet);
+
+		assertEquals(0L, limiter.reserve(Long.MAX_VALUE));
+		assertEquals(0L, limiter.reserve(Long.MAX_VALUE));
+		assertEquals(1L, reads.get());
+	}
+
+	@Test
+	public void watch() throws IOException, InterruptedException {
+
+		final File file = File.createTempFile("ratelimitertest", ".rate");
+		final RateLimiter limiter = new RateLimiter(0, clock::get);
+
+		final Disposable watch = limiter.watch(file, 10);
+		try {
+			FileUtils.writeStringToFile(file, "1234\n", StandardCharsets.UTF_8);
+			awaitRate(limiter, 1234);
+
+			FileUtils.writeStringToFile(file, "fast", StandardCharsets.UTF_8);
+			file.setLastModified(file.lastModified() + 2000);
+			awaitRate(limiter, 1234);
+
+			FileUtils.writeStringToFile(file, "0", StandardCharsets.UTF_8);
+			file.setLastModified(file.lastModified() + 4000);
+			awaitRate(limiter, 0);
+		} finally {
+			watch.dispose();
+			FileUtils.deleteQuietly(file);
+		}
+	}
+
+	/**
+	 * Waits up to five seconds for the given rate to be read.
+	 *
+	 * @param limiter The {@link RateLimiter}.
+	 * @param rate The expected rate.
+	 */
+	private static void awaitRate(final RateLimiter limiter, final long rate) throws InterruptedException {
+
+		for (int i = 0; i < 500 && limiter.getRate() != rate; i++) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(rate, limiter.getRate());
+	}
+}
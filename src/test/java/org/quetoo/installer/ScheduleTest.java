@@ -0,0 +1,158 @@
+package org.quetoo.installer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quetoo.installer.aws.S3Bucket;
+import org.quetoo.installer.aws.S3Delta;
+import org.quetoo.installer.aws.S3Object;
+import org.quetoo.installer.aws.S3Sync;
+
+/**
+ * Unit tests for the {@link Schedule} class.
+ *
+ * @author jdolan
+ */
+public class ScheduleTest {
+
+	private static final String ETAG = "0123456789abcdef0123456789abcdef";
+
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		dir = Files.createTempDirectory("scheduletest").toFile();
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteQuietly(dir);
+	}
+
+	/**
+	 * @param root The installation directory.
+	 * @param objects The object keys and sizes, in pairs.
+	 * @return A {@link Delta} of the given objects, mapped beneath `root`.
+	 */
+	private Delta delta(final File root, final Object... objects) throws IOException {
+
+		final S3Sync sync = new S3Sync.Builder()
+				.withBucketName("quetoo")
+				.withMapper(obj -> new File(obj.getKey()))
+				.withDestination(root)
+				.build();
+
+		final String listing = "<ListBucketResult><Name>quetoo</Name></ListBucketResult>";
+		final S3Bucket bucket = new S3Bucket(sync, new ByteArrayInputStream(listing.getBytes(StandardCharsets.UTF_8)));
+
+		final List<S3Object> delta = new ArrayList<>();
+		for (int i = 0; i < objects.length; i += 2) {
+			delta.add(new S3Object(bucket, (String) objects[i], ETAG, (Integer) objects[i + 1]));
+		}
+
+		return new S3Delta(bucket, delta);
+	}
+
+	/**
+	 * @param build The {@link Build}.
+	 * @param priority The priority patterns, or null for the defaults.
+	 * @return The {@link Config} of an installation of `build` to the temporary directory.
+	 */
+	private Config config(final Build build, final String priority) {
+
+		final Properties properties = new Properties();
+		properties.setProperty(Config.DIR, dir.getAbsolutePath());
+		properties.setProperty(Config.BUILD, build.toString());
+		if (priority != null) {
+			properties.setProperty(Config.PRIORITY, priority);
+		}
+
+		return new Config(properties);
+	}
+
+	/**
+	 * @param assets The {@link Asset}s.
+	 * @return The names of the given {@link Asset}s.
+	 */
+	private static List<String> names(final List<Asset> assets) {
+		return assets.stream().map(Asset::getName).collect(Collectors.toList());
+	}
+
+	@Test
+	public void targets() throws IOException {
+
+		final Config config = config(Build.x86_64_pc_linux, "bin/** ; lib/*.{so,dll}");
+		assertEquals(Arrays.asList("bin/**", "lib/*.{so,dll}"), config.getPriority());
+
+		final File a = new File(dir, "a"), b = new File(dir, "b");
+		final Schedule schedule = new Schedule(Arrays.asList(a, b), config.getPriority());
+
+		final List<Asset> order = schedule.order(Arrays.asList(
+				delta(a, "share/default/pak", 1000, "lib/libquetoo.so", 10, "bin/quetoo", 1),
+				delta(b, "lib/libquetoo.a", 100, "lib/quetoo.dll", 20, "bin/quetoo-update", 2)));
+
+		assertEquals(Arrays.asList("bin/quetoo-update", "bin/quetoo", "lib/quetoo.dll", "lib/libquetoo.so",
+				"share/default/pak", "lib/libquetoo.a"), names(order));
+
+		assertEquals(0, schedule.getPriority(order.get(1)));
+		assertEquals(1, schedule.getPriority(order.get(3)));
+		assertEquals(2, schedule.getPriority(order.get(5)));
+	}
+
+	@Test
+	public void largestFirst() throws IOException {
+
+		final Schedule schedule = new Schedule(dir, Arrays.asList("share/**"));
+
+		final List<Asset> order = schedule.order(Arrays.asList(
+				delta(dir, "share/small", 1, "bin/large", 300, "share/large", 30),
+				delta(dir, "share/medium", 20, "bin/small", 3)));
+
+		assertEquals(Arrays.asList("share/large", "share/medium", "share/small", "bin/large", "bin/small"),
+				names(order));
+	}
+
+	@Test
+	public void linux() throws IOException {
+
+		final Config config = config(Build.x86_64_pc_linux, null);
+		assertEquals(Arrays.asList("bin/**", "lib/**"), config.getPriority());
+
+		final Schedule schedule = new Schedule(dir, config.getPriority());
+
+		final List<Asset> order = schedule.order(Arrays.asList(
+				delta(dir, "share/default/pak", 100, "lib/libquetoo.so", 10, "bin/quetoo", 1)));
+
+		assertEquals(Arrays.asList("bin/quetoo", "lib/libquetoo.so", "share/default/pak"), names(order));
+	}
+
+	@Test
+	public void darwin() throws IOException {
+
+		final Config config = config(Build.x86_64_apple_darwin, null);
+		assertEquals(Arrays.asList("Contents/MacOS/*", "Contents/MacOS/lib/**"), config.getPriority());
+
+		final Schedule schedule = new Schedule(dir, config.getPriority());
+
+		final List<Asset> order = schedule.order(Arrays.asList(
+				delta(dir, "Contents/Resources/default/pak", 100, "Contents/MacOS/lib/libquetoo.dylib", 10,
+						"Contents/MacOS/quetoo", 1)));
+
+		assertEquals(Arrays.asList("Contents/MacOS/quetoo", "Contents/MacOS/lib/libquetoo.dylib",
+				"Contents/Resources/default/pak"), names(order));
+	}
+}
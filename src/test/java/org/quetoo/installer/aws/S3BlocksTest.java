@@ -0,0 +1,184 @@
+package org.quetoo.installer.aws;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link S3Blocks} class.
+ *
+ * @author jdolan
+ */
+public class S3BlocksTest {
+
+	private static final int BLOCK_SIZE = 1024;
+
+	private byte[] original;
+	private File local, remote;
+
+	@Before
+	public void before() throws IOException {
+
+		original = new byte[64 * BLOCK_SIZE];
+		new Random(0).nextBytes(original);
+
+		local = File.createTempFile("s3blockstest", ".local");
+		FileUtils.writeByteArrayToFile(local, original);
+
+		remote = File.createTempFile("s3blockstest", ".remote");
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteQuietly(local);
+		FileUtils.deleteQuietly(remote);
+	}
+
+	/**
+	 * @param bytes The content of the remote object.
+	 * @return The block checksums of the remote object.
+	 */
+	private S3Blocks blocks(final byte[] bytes) throws IOException {
+		FileUtils.writeByteArrayToFile(remote, bytes);
+		return new S3Blocks(remote, S3.md5Hex(remote), BLOCK_SIZE);
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+
+		final S3Blocks blocks = blocks(ArrayUtils.subarray(original, 0, 10 * BLOCK_SIZE + 100));
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		blocks.write(out);
+
+		final S3Blocks read = new S3Blocks(new ByteArrayInputStream(out.toByteArray()), 10 * BLOCK_SIZE + 100);
+
+		assertEquals(blocks.getEtag(), read.getEtag());
+		assertEquals(10 * BLOCK_SIZE + 100, read.getSize());
+		assertEquals(BLOCK_SIZE, read.getBlockSize());
+		assertEquals(11, read.getBlockCount());
+
+		final ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+		read.write(rewritten);
+
+		assertArrayEquals(out.toByteArray(), rewritten.toByteArray());
+	}
+
+	@Test(expected = IOException.class)
+	public void unsupported() throws IOException {
+		new S3Blocks(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }), 0);
+	}
+
+	/**
+	 * @param blocks The block checksums.
+	 * @param size The size to claim in the sidecar header.
+	 * @param blockSize The block size to claim in the sidecar header.
+	 * @return The sidecar of `blocks`, with the given header fields.
+	 */
+	private static byte[] sidecar(final S3Blocks blocks, final long size, final int blockSize) throws IOException {
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		blocks.write(out);
+
+		final ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+		final int header = Integer.BYTES + Short.BYTES + buffer.getShort(Integer.BYTES);
+
+		buffer.putLong(header, size).putInt(header + Long.BYTES, blockSize);
+		return buffer.array();
+	}
+
+	@Test
+	public void malformed() throws IOException {
+
+		final S3Blocks blocks = blocks(original);
+		final long size = original.length;
+
+		final long[][] headers = {
+			{ size, BLOCK_SIZE, size + 1 },
+			{ size, 0, size },
+			{ size, 1, size },
+			{ size, S3Blocks.MIN_BLOCK_SIZE - 1, size },
+			{ size, S3Blocks.MAX_BLOCK_SIZE + 1, size },
+			{ -1, BLOCK_SIZE, -1 },
+			{ Long.MAX_VALUE, S3Blocks.MIN_BLOCK_SIZE, Long.MAX_VALUE },
+		};
+
+		for (long[] header : headers) {
+			final byte[] sidecar = sidecar(blocks, header[0], (int) header[1]);
+			try {
+				new S3Blocks(new ByteArrayInputStream(sidecar), header[2]);
+				fail("Accepted size " + header[0] + ", block size " + header[1]);
+			} catch (IOException ioe) {
+				// expected, before allocating any checksums
+			}
+		}
+
+		assertEquals(64, new S3Blocks(new ByteArrayInputStream(sidecar(blocks, size, BLOCK_SIZE)), size).getBlockCount());
+	}
+
+	@Test
+	public void insertion() throws IOException {
+
+		final int at = 4 * BLOCK_SIZE + 500, length = 100;
+
+		final byte[] inserted = new byte[length];
+		new Random(1).nextBytes(inserted);
+
+		final byte[] bytes = ArrayUtils.addAll(ArrayUtils.subarray(original, 0, at),
+				ArrayUtils.addAll(inserted, ArrayUtils.subarray(original, at, original.length)));
+
+		final long[] offsets = blocks(bytes).match(local);
+
+		assertEquals(65, offsets.length);
+
+		for (int i = 0; i < offsets.length; i++) {
+			final long start = (long) i * BLOCK_SIZE, end = start + BLOCK_SIZE;
+			if (end > bytes.length) {
+				assertEquals("partial block " + i, -1L, offsets[i]);
+			} else if (end <= at) {
+				assertEquals("block " + i, start, offsets[i]);
+			} else if (start >= at + length) {
+				assertEquals("block " + i, start - length, offsets[i]);
+			} else {
+				assertEquals("block " + i, -1L, offsets[i]);
+			}
+		}
+	}
+
+	@Test
+	public void modification() throws IOException {
+
+		final byte[] bytes = original.clone();
+		bytes[7 * BLOCK_SIZE + 10] ^= 0xff;
+
+		final long[] offsets = blocks(bytes).match(local);
+
+		for (int i = 0; i < offsets.length; i++) {
+			assertEquals("block " + i, i == 7 ? -1L : (long) i * BLOCK_SIZE, offsets[i]);
+		}
+	}
+
+	@Test
+	public void partialBlock() throws IOException {
+
+		final byte[] bytes = ArrayUtils.subarray(original, 0, 3 * BLOCK_SIZE + 100);
+		FileUtils.writeByteArrayToFile(local, bytes);
+
+		final long[] offsets = blocks(bytes).match(local);
+
+		assertArrayEquals(new long[] { 0, BLOCK_SIZE, 2 * BLOCK_SIZE, -1 }, offsets);
+	}
+}
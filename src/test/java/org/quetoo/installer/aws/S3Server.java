@@ -0,0 +1,461 @@
+package org.quetoo.installer.aws;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embedded stand-in for S3, serving generated buckets from memory on the loopback
+ * interface. It supports paged ListObjectsV2 and V1 listings, optionally gzip compressed,
+ * simple and multipart-style ETags, Range, If-Range, If-Match and If-None-Match requests.
+ * Latency and errors may be injected to exercise retries and hedging.
+ *
+ * Buckets are addressed by path, e.g. `http://127.0.0.1:port/bucket/key`, so that it may be
+ * used with {@link S3Sync.Builder#withEndpoint(URI)}.
+ *
+ * @author jdolan
+ */
+public class S3Server implements Closeable {
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+	/**
+	 * An object held by the server.
+	 */
+	private static class Obj {
+
+		private final byte[] content;
+		private final String etag;
+
+		private Obj(final byte[] content, final String etag) {
+			this.content = content;
+			this.etag = etag;
+		}
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, NavigableMap<String, Obj>> buckets = new ConcurrentHashMap<>();
+	private final Random random = new Random(0);
+
+	private volatile int pageSize = 1000;
+	private volatile long partSize;
+	private volatile long latency;
+	private volatile double errorRate;
+	private volatile boolean compression = true;
+	private volatile boolean v1;
+
+	private final AtomicInteger failures = new AtomicInteger();
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger listings = new AtomicInteger();
+	private final AtomicInteger ranges = new AtomicInteger();
+	private final AtomicLong bytes = new AtomicLong();
+
+	/**
+	 * Starts an {@link S3Server} on an ephemeral port.
+	 *
+	 * @throws IOException If an error occurs.
+	 */
+	public S3Server() throws IOException {
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", this::handle);
+
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Adds an object. Objects larger than the part size, if one is set, are given a
+	 * multipart-style ETag.
+	 *
+	 * @param bucket The bucket name.
+	 * @param key The object key.
+	 * @param content The object content.
+	 * @return The ETag of the object.
+	 */
+	public String put(final String bucket, final String key, final byte[] content) {
+
+		final String etag;
+		if (partSize > 0 && content.length > partSize) {
+			final ByteArrayOutputStream digests = new ByteArrayOutputStream();
+			int parts = 0;
+			for (long offset = 0; offset < content.length; offset += partSize, parts++) {
+				final int end = (int) Math.min(content.length, offset + partSize);
+				digests.writeBytes(DigestUtils.md5(Arrays.copyOfRange(content, (int) offset, end)));
+			}
+			etag = DigestUtils.md5Hex(digests.toByteArray()) + "-" + parts;
+		} else {
+			etag = DigestUtils.md5Hex(content);
+		}
+
+		buckets.computeIfAbsent(bucket, name -> new ConcurrentSkipListMap<>()).put(key, new Obj(content, etag));
+		return etag;
+	}
+
+	/**
+	 * Generates `count` objects of pseudo-random content, with keys formatted from `pattern`
+	 * and sizes uniformly distributed between `minSize` and `maxSize`.
+	 *
+	 * @param bucket The bucket name.
+	 * @param pattern The key pattern, formatted with the object's index.
+	 * @param count The number of objects.
+	 * @param minSize The minimum object size.
+	 * @param maxSize The maximum object size.
+	 * @param seed The random seed.
+	 */
+	public void generate(final String bucket, final String pattern, final int count, final int minSize,
+			final int maxSize, final long seed) {
+
+		final Random random = new Random(seed);
+		for (int i = 0; i < count; i++) {
+			final byte[] content = new byte[minSize + random.nextInt(maxSize - minSize + 1)];
+			random.nextBytes(content);
+			put(bucket, String.format(pattern, i), content);
+		}
+	}
+
+	/**
+	 * @param bucket The bucket name.
+	 * @param key The object key.
+	 * @return The content of the object, or null.
+	 */
+	public byte[] get(final String bucket, final String key) {
+		final Obj obj = buckets.getOrDefault(bucket, new ConcurrentSkipListMap<>()).get(key);
+		return obj == null ? null : obj.content;
+	}
+
+	/**
+	 * Handles a request, after injecting any configured latency or error.
+	 *
+	 * @param exchange The HttpExchange.
+	 * @throws IOException If an error occurs.
+	 */
+	private void handle(final HttpExchange exchange) throws IOException {
+
+		try {
+			requests.incrementAndGet();
+
+			if (latency > 0) {
+				TimeUnit.MILLISECONDS.sleep(latency);
+			}
+
+			final boolean fail;
+			synchronized (random) {
+				fail = failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0 || random.nextDouble() < errorRate;
+			}
+
+			if (fail) {
+				exchange.sendResponseHeaders(503, -1);
+				return;
+			}
+
+			final String path = exchange.getRequestURI().getPath();
+			final String bucket = StringUtils.substringBetween(path, "/", "/");
+			final String key = StringUtils.substringAfter(StringUtils.removeStart(path, "/"), "/");
+
+			if (bucket == null || !buckets.containsKey(bucket)) {
+				exchange.sendResponseHeaders(404, -1);
+			} else if (key.isEmpty()) {
+				if ("HEAD".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(200, -1);
+				} else {
+					list(exchange, buckets.get(bucket));
+				}
+			} else {
+				get(exchange, buckets.get(bucket).get(key));
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Serves a page of a ListObjectsV2 listing.
+	 *
+	 * @param exchange The HttpExchange.
+	 * @param objects The objects of the bucket.
+	 * @throws IOException If an error occurs.
+	 */
+	private void list(final HttpExchange exchange, final NavigableMap<String, Obj> objects) throws IOException {
+
+		listings.incrementAndGet();
+
+		String prefix = "", token = null, startAfter = null, marker = null;
+		int maxKeys = pageSize;
+
+		for (NameValuePair param : URLEncodedUtils.parse(exchange.getRequestURI(), StandardCharsets.UTF_8)) {
+			switch (param.getName()) {
+				case "prefix":
+					prefix = param.getValue();
+					break;
+				case "continuation-token":
+					token = new String(Base64.getUrlDecoder().decode(param.getValue()), StandardCharsets.UTF_8);
+					break;
+				case "start-after":
+					startAfter = param.getValue();
+					break;
+				case "marker":
+					marker = param.getValue();
+					break;
+				case "max-keys":
+					maxKeys = Math.min(maxKeys, Integer.parseInt(param.getValue()));
+					break;
+				default:
+					break;
+			}
+		}
+
+		final String after = v1 ? marker : token != null ? token : startAfter;
+		final NavigableMap<String, Obj> keys = after == null ? objects.tailMap(prefix, true) : objects.tailMap(after, false);
+
+		final StringBuilder xml = new StringBuilder()
+				.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+				.append("<Prefix>").append(escape(prefix)).append("</Prefix>");
+
+		int count = 0;
+		String last = null;
+		boolean truncated = false;
+
+		for (Map.Entry<String, Obj> entry : keys.entrySet()) {
+			if (!entry.getKey().startsWith(prefix)) {
+				break;
+			}
+			if (count == maxKeys) {
+				truncated = true;
+				break;
+			}
+			xml.append("<Contents>")
+					.append("<Key>").append(escape(entry.getKey())).append("</Key>")
+					.append("<LastModified>2024-01-01T00:00:00.000Z</LastModified>")
+					.append("<ETag>&quot;").append(entry.getValue().etag).append("&quot;</ETag>")
+					.append("<Size>").append(entry.getValue().content.length).append("</Size>")
+					.append("<StorageClass>STANDARD</StorageClass>")
+					.append("</Contents>");
+			last = entry.getKey();
+			count++;
+		}
+
+		xml.append("<KeyCount>").append(count).append("</KeyCount>")
+				.append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+				.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+
+		if (truncated && !v1) {
+			xml.append("<NextContinuationToken>")
+					.append(Base64.getUrlEncoder().encodeToString(last.getBytes(StandardCharsets.UTF_8)))
+					.append("</NextContinuationToken>");
+		}
+
+		xml.append("</ListBucketResult>");
+
+		final byte[] body = xml.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/xml");
+
+		final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (compression && StringUtils.contains(acceptEncoding, "gzip")) {
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+				out.write(body);
+			}
+		} else {
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+
+	/**
+	 * Serves an object, or a range of it, subject to any conditional headers.
+	 *
+	 * @param exchange The HttpExchange.
+	 * @param obj The object, or null.
+	 * @throws IOException If an error occurs.
+	 */
+	private void get(final HttpExchange exchange, final Obj obj) throws IOException {
+
+		if (obj == null) {
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+
+		final String etag = "\"" + obj.etag + "\"";
+		exchange.getResponseHeaders().set("ETag", etag);
+		exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+		final String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+		if (ifMatch != null && !ifMatch.equals(etag)) {
+			exchange.sendResponseHeaders(412, -1);
+			return;
+		}
+
+		final String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+		if (ifNoneMatch != null && ifNoneMatch.equals(etag)) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+
+		final long length = obj.content.length;
+		long start = 0, end = length - 1;
+		int status = 200;
+
+		final String range = exchange.getRequestHeaders().getFirst("Range");
+		final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+
+		if (range != null && (ifRange == null || ifRange.equals(etag))) {
+			final Matcher matcher = RANGE.matcher(range);
+			if (matcher.matches()) {
+				start = Long.parseLong(matcher.group(1));
+				if (!matcher.group(2).isEmpty()) {
+					end = Math.min(end, Long.parseLong(matcher.group(2)));
+				}
+				if (start >= length || start > end) {
+					exchange.getResponseHeaders().set("Content-Range", "bytes */" + length);
+					exchange.sendResponseHeaders(416, -1);
+					return;
+				}
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+				status = 206;
+				ranges.incrementAndGet();
+			}
+		}
+
+		final int count = (int) (end - start + 1);
+		exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+
+		if (count > 0) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(obj.content, (int) start, count);
+			}
+			bytes.addAndGet(count);
+		}
+	}
+
+	/**
+	 * @param string The string.
+	 * @return The string, escaped for XML.
+	 */
+	private static String escape(final String string) {
+		return string.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	/**
+	 * @return The endpoint of this server.
+	 */
+	public URI getEndpoint() {
+		return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+	}
+
+	public void setPageSize(final int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @param partSize The part size of multipart-style ETags for objects subsequently added,
+	 * or 0 for simple ETags only.
+	 */
+	public void setPartSize(final long partSize) {
+		this.partSize = partSize;
+	}
+
+	/**
+	 * @param latency The latency, in milliseconds, added to every request.
+	 */
+	public void setLatency(final long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * @param errorRate The probability of any request failing with `503`.
+	 */
+	public void setErrorRate(final double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * @param failures The number of subsequent requests to fail with `503`.
+	 */
+	public void setFailures(final int failures) {
+		this.failures.set(failures);
+	}
+
+	public void setCompression(final boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * @param v1 True to answer listings as ListObjects (V1) does, as some mirrors and caching
+	 * proxies do regardless of `list-type`: pages continue from `marker`, and truncated pages
+	 * carry no continuation token.
+	 */
+	public void setV1(final boolean v1) {
+		this.v1 = v1;
+	}
+
+	/**
+	 * @return The number of requests received.
+	 */
+	public int getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return The number of listing pages served.
+	 */
+	public int getListings() {
+		return listings.get();
+	}
+
+	/**
+	 * @return The number of ranges served.
+	 */
+	public int getRanges() {
+		return ranges.get();
+	}
+
+	/**
+	 * @return The number of object content bytes served.
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,372 @@
+package org.quetoo.installer.aws;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quetoo.installer.Build;
+import org.quetoo.installer.Config;
+import org.quetoo.installer.ContentStore;
+import org.quetoo.installer.Delta;
+import org.quetoo.installer.DigestCache;
+import org.quetoo.installer.Manager;
+import org.quetoo.installer.Target;
+
+import io.reactivex.Observable;
+
+/**
+ * Offline integration tests for the {@link S3Sync} class, against an embedded {@link S3Server}.
+ *
+ * @author jdolan
+ */
+public class S3SyncLocalTest {
+
+	private static final String BUCKET = "local";
+
+	private S3Server server;
+	private CloseableHttpClient httpClient;
+	private File destination;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new S3Server();
+		httpClient = HttpClients.createDefault();
+		destination = Files.createTempDirectory("s3-sync-local").toFile();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		httpClient.close();
+		server.close();
+		FileUtils.deleteQuietly(destination);
+	}
+
+	/**
+	 * @param builder The {@link S3Sync.Builder}.
+	 * @return An {@link S3Sync} of {@link #BUCKET} to the destination.
+	 */
+	private S3Sync build(final S3Sync.Builder builder) {
+		return builder.withHttpClient(httpClient)
+				.withEndpoint(server.getEndpoint())
+				.withBucketName(BUCKET)
+				.withMapper(s -> new File(s.getKey()))
+				.withDestination(destination)
+				.build();
+	}
+
+	/**
+	 * @param sync The {@link S3Sync}.
+	 * @return The number of files synced.
+	 */
+	private static int sync(final S3Sync sync) {
+
+		final AtomicInteger count = new AtomicInteger();
+
+		sync.index()
+				.flatMapSingle(sync::delta)
+				.flatMap(sync::sync)
+				.doOnNext(file -> count.incrementAndGet())
+				.test()
+				.awaitDone(1, TimeUnit.MINUTES)
+				.assertNoErrors()
+				.assertComplete();
+
+		return count.get();
+	}
+
+	/**
+	 * Asserts that the given key was synced intact.
+	 *
+	 * @param key The object key.
+	 */
+	private void assertSynced(final String key) throws IOException {
+		assertArrayEquals(key, server.get(BUCKET, key), FileUtils.readFileToByteArray(new File(destination, key)));
+	}
+
+	@Test
+	public void pagedListing() throws IOException {
+
+		server.setPageSize(25);
+		server.setPartSize(64 * 1024);
+		server.generate(BUCKET, "dir_%d/file.dat", 100, 0, 256 * 1024, 1);
+
+		final S3Sync sync = build(new S3Sync.Builder().withPartSize(64 * 1024));
+
+		assertEquals(100, sync(sync));
+		assertTrue(server.getListings() >= 4);
+
+		for (int i = 0; i < 100; i++) {
+			assertSynced(String.format("dir_%d/file.dat", i));
+		}
+
+		assertEquals(0, sync(sync));
+	}
+
+	@Test
+	public void markerListing() throws IOException {
+
+		server.setV1(true);
+		server.setPageSize(10);
+		server.generate(BUCKET, "file_%02d.dat", 35, 0, 1024, 9);
+
+		assertEquals(35, sync(build(new S3Sync.Builder())));
+		assertEquals(4, server.getListings());
+
+		for (int i = 0; i < 35; i++) {
+			assertSynced(String.format("file_%02d.dat", i));
+		}
+	}
+
+	@Test
+	public void retries() throws IOException {
+
+		server.generate(BUCKET, "file_%d.dat", 20, 1024, 64 * 1024, 2);
+		server.setLatency(5);
+		server.setErrorRate(0.1);
+		server.setFailures(2);
+
+		final S3Sync sync = build(new S3Sync.Builder().withRetries(10));
+
+		assertEquals(20, sync(sync));
+
+		for (int i = 0; i < 20; i++) {
+			assertSynced(String.format("file_%d.dat", i));
+		}
+	}
+
+	@Test
+	public void ranges() throws IOException {
+
+		server.generate(BUCKET, "large.dat", 1, 1024 * 1024, 1024 * 1024, 3);
+
+		final S3Sync sync = build(new S3Sync.Builder()
+				.withRangeThreshold(256 * 1024)
+				.withRangeSize(64 * 1024)
+				.withRangeParallelism(4));
+
+		assertEquals(1, sync(sync));
+		assertEquals(16, server.getRanges());
+
+		assertSynced("large.dat");
+	}
+
+	@Test
+	public void resumedRanges() throws IOException {
+
+		final byte[] bytes = new byte[1024 * 1024];
+		new Random(10).nextBytes(bytes);
+
+		final String etag = server.put(BUCKET, "large.dat", bytes);
+
+		final byte[] sparse = new byte[bytes.length];
+		System.arraycopy(bytes, 0, sparse, 0, 128 * 1024);
+		System.arraycopy(bytes, 512 * 1024, sparse, 512 * 1024, 64 * 1024);
+
+		final File part = new File(destination, "large.dat." + etag + ".part");
+		final File journal = new File(part.getPath() + ".ranges");
+
+		FileUtils.writeByteArrayToFile(part, sparse);
+		FileUtils.writeStringToFile(journal, Integer.toString(128 * 1024), StandardCharsets.UTF_8);
+
+		final S3Sync sync = build(new S3Sync.Builder()
+				.withRangeThreshold(256 * 1024)
+				.withRangeSize(64 * 1024)
+				.withRangeParallelism(4));
+
+		assertEquals(1, sync(sync));
+		assertEquals(14, server.getRanges());
+		assertEquals(bytes.length - 128 * 1024, server.getBytes());
+
+		assertSynced("large.dat");
+		assertFalse(part.exists());
+		assertFalse(journal.exists());
+	}
+
+	@Test
+	public void malformedBlocks() throws IOException {
+
+		server.put(BUCKET, "file.dat", new byte[] { 1, 2, 3 });
+
+		final S3Sync sync = build(new S3Sync.Builder()
+				.withRetries(1));
+
+		assertEquals(1, sync(sync));
+
+		server.put(BUCKET, "file.dat", new byte[] { 4, 5, 6 });
+		server.put(BUCKET, "file.dat" + S3Blocks.SUFFIX, new byte[] { 7, 8, 9 });
+
+		final int requests = server.getRequests();
+
+		assertEquals(1, sync(sync));
+		assertSynced("file.dat");
+		assertTrue(server.getRequests() - requests <= 3);
+	}
+
+	@Test
+	public void reverted() throws IOException {
+
+		final byte[] original = new byte[] { 1, 2, 3 };
+		server.put(BUCKET, "file.dat", original);
+
+		final ContentStore contentStore = new ContentStore(new File(destination, ".store"), Long.MAX_VALUE);
+		final S3Sync sync = build(new S3Sync.Builder()
+				.withDigestCache(new DigestCache(new File(destination, DigestCache.NAME)))
+				.withContentStore(contentStore));
+
+		assertEquals(1, sync(sync));
+
+		final String modified = server.put(BUCKET, "file.dat", new byte[] { 4, 5, 6 });
+
+		final Delta delta = sync.index()
+				.flatMapSingle(sync::delta)
+				.blockingFirst();
+
+		server.put(BUCKET, "file.dat", original);
+
+		sync.sync(delta)
+				.test()
+				.awaitDone(1, TimeUnit.MINUTES)
+				.assertNoErrors()
+				.assertNoValues();
+
+		assertSynced("file.dat");
+		assertFalse(contentStore.get(modified, 3, new File(destination, "copy.dat")));
+	}
+
+	@Test
+	public void revertedManifest() {
+
+		final byte[] original = new byte[] { 1, 2, 3 };
+		server.put(Target.QUETOO, Build.x86_64_pc_linux + "/bin/file", new byte[0]);
+		server.put(Target.QUETOO_DATA, "file.dat", original);
+
+		final Properties properties = new Properties();
+		properties.setProperty(Config.DIR, destination.getAbsolutePath());
+		properties.setProperty(Config.BUILD, Build.x86_64_pc_linux.toString());
+		properties.setProperty(Config.ENDPOINT, server.getEndpoint().toString());
+
+		final Manager manager = new Manager(new Config(properties));
+		manager.sync(manager.delta(manager.index())).blockingSubscribe();
+
+		final String modified = server.put(Target.QUETOO_DATA, "file.dat", new byte[] { 4, 5, 6 });
+		final List<Delta> deltas = manager.delta(manager.index()).toList().blockingGet();
+		server.put(Target.QUETOO_DATA, "file.dat", original);
+
+		manager.sync(Observable.fromIterable(deltas))
+				.test()
+				.awaitDone(1, TimeUnit.MINUTES)
+				.assertNoErrors()
+				.assertNoValues();
+
+		final File file = new File(destination, "share/file.dat");
+		assertFalse(manager.getTargets().get(0).getManifest().isCurrent(file, modified, 3));
+	}
+
+	@Test
+	public void manager() throws IOException {
+
+		final String build = Build.x86_64_pc_linux.toString();
+
+		server.generate(Target.QUETOO, build + "/bin/file_%d", 50, 0, 128 * 1024, 4);
+		server.generate(Target.QUETOO, build + "/lib/file_%d", 50, 0, 128 * 1024, 5);
+		server.generate(Target.QUETOO_DATA, "default/file_%d", 200, 0, 64 * 1024, 6);
+		server.setLatency(1);
+
+		final Properties properties = new Properties();
+		properties.setProperty(Config.DIR, destination.getAbsolutePath());
+		properties.setProperty(Config.BUILD, build);
+		properties.setProperty(Config.ENDPOINT, server.getEndpoint().toString());
+
+		final Manager manager = new Manager(new Config(properties));
+
+		manager.sync(manager.delta(manager.index()))
+				.test()
+				.awaitDone(1, TimeUnit.MINUTES)
+				.assertNoErrors()
+				.assertComplete()
+				.assertValueCount(300);
+
+		long size = 0;
+		for (int i = 0; i < 200; i++) {
+			size += server.get(Target.QUETOO_DATA, "default/file_" + i).length;
+			if (i < 50) {
+				size += server.get(Target.QUETOO, build + "/bin/file_" + i).length;
+				size += server.get(Target.QUETOO, build + "/lib/file_" + i).length;
+			}
+		}
+
+		assertEquals(size, server.getBytes());
+
+		assertArrayEquals(server.get(Target.QUETOO, build + "/bin/file_0"),
+				FileUtils.readFileToByteArray(new File(destination, "bin/file_0")));
+		assertArrayEquals(server.get(Target.QUETOO_DATA, "default/file_0"),
+				FileUtils.readFileToByteArray(new File(destination, "share/default/file_0")));
+
+		manager.sync(manager.delta(manager.index()))
+				.test()
+				.awaitDone(1, TimeUnit.MINUTES)
+				.assertNoErrors()
+				.assertNoValues();
+
+		assertEquals(size, server.getBytes());
+	}
+
+	@Test
+	public void targets() throws IOException {
+
+		final String build = Build.x86_64_pc_linux.toString();
+
+		server.generate(Target.QUETOO, build + "/bin/file_%d", 10, 0, 64 * 1024, 7);
+		server.generate(Target.QUETOO_DATA, "default/file_%d", 20, 0, 64 * 1024, 8);
+
+		final File a = new File(destination, "a"), b = new File(destination, "b");
+
+		final Properties properties = new Properties();
+		properties.setProperty(Config.BUILD, build);
+		properties.setProperty(Config.ENDPOINT, server.getEndpoint().toString());
+		properties.setProperty(Config.TARGETS, a.getAbsolutePath() + File.pathSeparator + b.getAbsolutePath());
+
+		final Manager manager = new Manager(new Config(properties));
+
+		manager.sync(manager.delta(manager.index()))
+				.test()
+				.awaitDone(1, TimeUnit.MINUTES)
+				.assertNoErrors()
+				.assertComplete()
+				.assertValueCount(60);
+
+		long size = 0;
+		for (int i = 0; i < 20; i++) {
+			size += server.get(Target.QUETOO_DATA, "default/file_" + i).length;
+			if (i < 10) {
+				size += server.get(Target.QUETOO, build + "/bin/file_" + i).length;
+			}
+		}
+
+		assertEquals(size, server.getBytes());
+
+		for (File dir : new File[] { a, b }) {
+			assertArrayEquals(server.get(Target.QUETOO, build + "/bin/file_9"),
+					FileUtils.readFileToByteArray(new File(dir, "bin/file_9")));
+			assertArrayEquals(server.get(Target.QUETOO_DATA, "default/file_19"),
+					FileUtils.readFileToByteArray(new File(dir, "share/default/file_19")));
+		}
+	}
+}
@@ -3,6 +3,7 @@ package org.quetoo.installer.aws;
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
@@ -40,6 +41,7 @@ public class S3SyncTest {
 			.flatMap(quetoo::sync)
 			.doOnNext(System.out::println)
 			.test()
+			.awaitDone(10, TimeUnit.MINUTES)
 			.assertNoErrors()
 			.assertComplete();
 	}
@@ -68,6 +70,7 @@ public class S3SyncTest {
 				.flatMapSingle(quetooData::delta)
 				.doOnNext(delta -> deltaCount.addAndGet(delta.count()))
 				.test()
+				.awaitDone(10, TimeUnit.MINUTES)
 				.assertNoErrors()
 				.assertComplete();
 		
@@ -0,0 +1,64 @@
+package org.quetoo.installer.aws;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link S3} utilities.
+ *
+ * @author jdolan
+ */
+public class S3Test {
+
+	private File small, large;
+
+	@Before
+	public void before() throws IOException {
+
+		small = File.createTempFile("s3test", ".small");
+		FileUtils.writeStringToFile(small, "0123456789", "US-ASCII");
+
+		final byte[] bytes = new byte[200000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (i % 251);
+		}
+
+		large = File.createTempFile("s3test", ".large");
+		FileUtils.writeByteArrayToFile(large, bytes);
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteQuietly(small);
+		FileUtils.deleteQuietly(large);
+	}
+
+	@Test
+	public void md5Hex() throws IOException {
+		assertEquals("781e5e245d69b566979b86e28d23f2c7", S3.md5Hex(small));
+		assertEquals("415d6e662118c229c6ad3f950c24702a", S3.md5Hex(large));
+	}
+
+	@Test
+	public void multipartEtags() throws IOException {
+
+		assertArrayEquals(new String[] {
+				"61e3716e3a7767581863b67c4e785584-3",
+				"9a6dbec798b1bfe66cc7659d2bb41720-2"
+		}, S3.multipartEtags(small, 4, 5));
+
+		assertArrayEquals(new String[] {
+				"52ffcadc44f67b27863de987056dbee8-3",
+				"0f49b74ae2641c6a4a7c6628a8c48a8a-4",
+				"414c0596d059af872773d561395118f5-2"
+		}, S3.multipartEtags(large, 70000, 65536, 100000));
+	}
+}